@@ -0,0 +1,83 @@
+package org.riversun.promise.benchmarks;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.riversun.promise.Func;
+import org.riversun.promise.Promise;
+
+/**
+ * Fan-out of Promise.all compared with CompletableFuture.allOf
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AllBenchmark {
+
+    @Param({ "1", "10", "1000", "10000" })
+    public int width;
+
+    private Func[] mFuncs;
+
+    @Setup
+    public void setup() {
+        mFuncs = new Func[width];
+        for (int i = 0; i < width; i++) {
+            final Integer value = i;
+            mFuncs[i] = (action, data) -> action.resolve(value);
+        }
+    }
+
+    @Benchmark
+    public Object promiseAll() throws InterruptedException {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Object[] result = new Object[1];
+
+        Promise.all(mFuncs)
+                .then((action, data) -> {
+                    result[0] = data;
+                    action.resolve();
+                    latch.countDown();
+                })
+                .start();
+
+        latch.await();
+        return result[0];
+    }
+
+    @Benchmark
+    public Object completableFutureAllOf() {
+
+        @SuppressWarnings("unchecked")
+        final CompletableFuture<Integer>[] futures = new CompletableFuture[width];
+        for (int i = 0; i < width; i++) {
+            final Integer value = i;
+            futures[i] = CompletableFuture.supplyAsync(() -> value);
+        }
+        CompletableFuture.allOf(futures).join();
+
+        final Object[] results = new Object[width];
+        for (int i = 0; i < width; i++) {
+            results[i] = futures[i].join();
+        }
+        return results;
+    }
+}
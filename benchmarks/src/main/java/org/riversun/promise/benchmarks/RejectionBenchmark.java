@@ -0,0 +1,81 @@
+package org.riversun.promise.benchmarks;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.riversun.promise.Func;
+import org.riversun.promise.Promise;
+import org.riversun.promise.SyncPromise;
+
+/**
+ * Propagation of a rejection at the first step through a long chain
+ * to the error handler at the end of the chain
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RejectionBenchmark {
+
+    private static final Func REJECT = (action, data) -> action.reject("ERROR");
+    private static final Func INCREMENT = (action, data) -> action.resolve((Integer) data + 1);
+
+    @Param({ "10", "50", "200" })
+    public int chainLength;
+
+    @Benchmark
+    public Object promise() throws InterruptedException {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Object[] result = new Object[1];
+
+        Promise promise = Promise.resolve(0).then(REJECT);
+        for (int i = 1; i < chainLength; i++) {
+            promise = promise.then(INCREMENT);
+        }
+        promise.then(null, (action, data) -> {
+            result[0] = data;
+            action.resolve();
+            latch.countDown();
+        }).start();
+
+        latch.await();
+        return result[0];
+    }
+
+    @Benchmark
+    public Object syncPromise() {
+        SyncPromise promise = SyncPromise.resolve(0).then(REJECT);
+        for (int i = 1; i < chainLength; i++) {
+            promise = promise.then(INCREMENT);
+        }
+        return promise.getValue();
+    }
+
+    @Benchmark
+    public Object completableFuture() {
+
+        CompletableFuture<Integer> future = CompletableFuture.completedFuture(0).thenApplyAsync(data -> {
+            throw new IllegalStateException("ERROR");
+        });
+        for (int i = 1; i < chainLength; i++) {
+            future = future.thenApply(data -> data + 1);
+        }
+        return future.exceptionally(e -> -1).join();
+    }
+}
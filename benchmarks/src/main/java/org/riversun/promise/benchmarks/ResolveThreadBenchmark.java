@@ -0,0 +1,93 @@
+package org.riversun.promise.benchmarks;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.riversun.promise.Func;
+import org.riversun.promise.Promise;
+
+/**
+ * A step that resolves inline compared with a step that resolves on another thread
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResolveThreadBenchmark {
+
+    private ExecutorService mResolver;
+
+    @Setup
+    public void setup() {
+        mResolver = Executors.newSingleThreadExecutor();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mResolver.shutdown();
+    }
+
+    private static Object runPromise(Func func) throws InterruptedException {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Object[] result = new Object[1];
+
+        Promise.resolve(1)
+                .then(func)
+                .then((action, data) -> {
+                    result[0] = data;
+                    action.resolve();
+                    latch.countDown();
+                })
+                .start();
+
+        latch.await();
+        return result[0];
+    }
+
+    @Benchmark
+    public Object promiseResolveInline() throws InterruptedException {
+        return runPromise((action, data) -> action.resolve(data));
+    }
+
+    @Benchmark
+    public Object promiseResolveOnAnotherThread() throws InterruptedException {
+        return runPromise((action, data) -> mResolver.execute(() -> action.resolve(data)));
+    }
+
+    @Benchmark
+    public Object completableFutureResolveInline() {
+        return CompletableFuture.completedFuture(1)
+                .thenApplyAsync(data -> data)
+                .join();
+    }
+
+    @Benchmark
+    public Object completableFutureResolveOnAnotherThread() {
+        return CompletableFuture.completedFuture(1)
+                .thenComposeAsync(data -> {
+                    final CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+                    mResolver.execute(() -> future.complete(data));
+                    return future;
+                })
+                .join();
+    }
+}
@@ -0,0 +1,91 @@
+package org.riversun.promise.benchmarks;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.riversun.promise.Func;
+import org.riversun.promise.SyncPromise;
+
+/**
+ * Latency of SyncPromise#then compared with a synchronous CompletableFuture chain,
+ * with the steps resolved inline and on another thread
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SyncPromiseBenchmark {
+
+    private static final Func INCREMENT = (action, data) -> action.resolve((Integer) data + 1);
+
+    @Param({ "1", "10" })
+    public int steps;
+
+    private ExecutorService mResolver;
+
+    @Setup
+    public void setup() {
+        mResolver = Executors.newSingleThreadExecutor();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mResolver.shutdown();
+    }
+
+    @Benchmark
+    public Object syncPromise() {
+        SyncPromise promise = SyncPromise.resolve(0);
+        for (int i = 0; i < steps; i++) {
+            promise = promise.then(INCREMENT);
+        }
+        return promise.getValue();
+    }
+
+    @Benchmark
+    public Object completableFuture() {
+        CompletableFuture<Integer> future = CompletableFuture.completedFuture(0);
+        for (int i = 0; i < steps; i++) {
+            future = future.thenApply(data -> data + 1);
+        }
+        return future.join();
+    }
+
+    @Benchmark
+    public Object syncPromiseResolveOnAnotherThread() {
+        SyncPromise promise = SyncPromise.resolve(0);
+        for (int i = 0; i < steps; i++) {
+            promise = promise.then((action, data) -> mResolver.execute(() -> action.resolve((Integer) data + 1)));
+        }
+        return promise.getValue();
+    }
+
+    @Benchmark
+    public Object completableFutureResolveOnAnotherThread() {
+        Integer value = 0;
+        for (int i = 0; i < steps; i++) {
+            final Integer data = value;
+            // Wait for each step like SyncPromise does
+            value = CompletableFuture.supplyAsync(() -> data + 1, mResolver).join();
+        }
+        return value;
+    }
+}
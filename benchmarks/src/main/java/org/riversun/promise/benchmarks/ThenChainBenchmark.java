@@ -0,0 +1,69 @@
+package org.riversun.promise.benchmarks;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.riversun.promise.Func;
+import org.riversun.promise.Promise;
+
+/**
+ * Single-step and N-step "then" chains of Promise compared with CompletableFuture
+ * 
+ * Both start the chain on a worker thread and wait for the last step on the caller thread.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ThenChainBenchmark {
+
+    private static final Func INCREMENT = (action, data) -> action.resolve((Integer) data + 1);
+
+    @Param({ "1", "10", "100" })
+    public int steps;
+
+    @Benchmark
+    public Object promise() throws InterruptedException {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Object[] result = new Object[1];
+
+        Promise promise = Promise.resolve(0);
+        for (int i = 0; i < steps; i++) {
+            promise = promise.then(INCREMENT);
+        }
+        promise.then((action, data) -> {
+            result[0] = data;
+            action.resolve();
+            latch.countDown();
+        }).start();
+
+        latch.await();
+        return result[0];
+    }
+
+    @Benchmark
+    public Object completableFuture() {
+
+        CompletableFuture<Integer> future = CompletableFuture.completedFuture(0).thenApplyAsync(data -> data);
+        for (int i = 0; i < steps; i++) {
+            future = future.thenApply(data -> data + 1);
+        }
+        return future.join();
+    }
+}
@@ -69,4 +69,13 @@ public interface Action {
      */
     public void reject();
 
+    /**
+     * Returns the cancellation token attached to the chain, or null if not attached
+     * 
+     * @return
+     */
+    public default CancellationToken getCancellationToken() {
+        return null;
+    }
+
 }
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2018-2019 Tom Misawa(riversun.org@gmail.com)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.promise;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Token to cancel a started chain.
+ * 
+ * Attach the token to a chain with Promise#withCancellationToken, and call {@link #cancel()} to stop it.
+ * Once cancelled,
+ * - The steps that have not started yet are skipped.
+ * - The thread running the current step is interrupted.
+ * - The chain is settled as REJECTED with the cancellation reason, so
+ * only the rejection handlers are run with the reason.
+ * 
+ * A func can also get the token of its chain by {@link Action#getCancellationToken()}.
+ * 
+ * Example Code
+ * <code>
+    final CancellationToken token = new CancellationToken();
+    Promise.resolve()
+        .withCancellationToken(token)
+        .then((action, data) -> {
+            // Do something long
+            action.resolve();
+        })
+        .then(null, (action, reason) -> {
+            // reason is CancellationException
+            action.resolve();
+        })
+        .start();
+    token.cancel();
+ * </code>
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+public final class CancellationToken {
+
+    private boolean mCancelled = false;
+    private Object mReason;
+
+    // Step(=handler promise) that has started but not settled yet
+    private Promise mPendingStep;
+
+    // Thread running a func of the chain
+    private Thread mRunningThread;
+
+    // Thread interrupted by #cancel, its interrupt status is cleared when leaving the func
+    private Thread mInterruptedThread;
+
+    private List<Runnable> mListeners;
+
+    public CancellationToken() {
+    }
+
+    /**
+     * Cancel the chain with CancellationException as the reason
+     * 
+     * @return true if cancelled by this call
+     */
+    public boolean cancel() {
+        return cancel(null);
+    }
+
+    /**
+     * Cancel the chain
+     * 
+     * @param reason
+     *            rejection reason of the chain, CancellationException if null
+     * @return true if cancelled by this call
+     */
+    public boolean cancel(Object reason) {
+
+        Promise pendingStep;
+        final List<Runnable> listeners;
+
+        synchronized (this) {
+            if (mCancelled) {
+                return false;
+            }
+            mCancelled = true;
+            mReason = reason == null ? new CancellationException("Cancelled") : reason;
+
+            // Settle the pending step before the interruption, so that the step cannot settle with the InterruptedException
+            pendingStep = mPendingStep;
+            mPendingStep = null;
+            if (pendingStep != null && !pendingStep.trySettle(Status.REJECTED)) {
+                pendingStep = null;
+            }
+
+            if (mRunningThread != null) {
+                mInterruptedThread = mRunningThread;
+                mRunningThread.interrupt();
+            }
+
+            listeners = mListeners;
+            mListeners = null;
+        }
+
+        if (listeners != null) {
+            for (Runnable listener : listeners) {
+                listener.run();
+            }
+        }
+
+        if (pendingStep != null) {
+            // Do not wait for the step to call resolve or reject
+            pendingStep.rejectSettledStep(mReason);
+        }
+        return true;
+    }
+
+    public synchronized boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Returns the cancellation reason, or null if not cancelled
+     * 
+     * @return
+     */
+    public synchronized Object getReason() {
+        return mReason;
+    }
+
+    /**
+     * Called before running the func of the step on the current thread
+     * 
+     * @return false if already cancelled
+     */
+    synchronized boolean enter(Promise step) {
+        if (mCancelled) {
+            return false;
+        }
+        mPendingStep = step;
+        mRunningThread = Thread.currentThread();
+        return true;
+    }
+
+    /**
+     * Called after the func returned on the current thread
+     */
+    synchronized void exit() {
+        final Thread currentThread = Thread.currentThread();
+        if (mRunningThread == currentThread) {
+            mRunningThread = null;
+        }
+        if (mInterruptedThread == currentThread) {
+            // Do not leak the interruption to the next task of the worker thread
+            mInterruptedThread = null;
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * Called when the step is resolved or rejected
+     * 
+     * @return false if the step has already been settled by cancellation
+     */
+    synchronized boolean settle(Promise step) {
+        if (mPendingStep != step) {
+            return false;
+        }
+        mPendingStep = null;
+        return true;
+    }
+
+    /**
+     * Add the listener called once on cancellation
+     * 
+     * @return false if already cancelled, the listener is not called in this case
+     */
+    synchronized boolean addListener(Runnable listener) {
+        if (mCancelled) {
+            return false;
+        }
+        if (mListeners == null) {
+            mListeners = new ArrayList<Runnable>(2);
+        }
+        mListeners.add(listener);
+        return true;
+    }
+
+    synchronized void removeListener(Runnable listener) {
+        if (mListeners != null) {
+            mListeners.remove(listener);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2018-2019 Tom Misawa(riversun.org@gmail.com)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.promise;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * The process-wide scheduler used by Promise and SyncPromise unless an executor is specified.
+ * 
+ * Worker threads are created on demand up to the maximum number of threads,
+ * and idle threads are terminated after the keep-alive time.
+ * So in the steady state, no thread is created for each chain.
+ * 
+ * The following system properties are available.
+ * 
+ * <pre>
+ * org.riversun.promise.scheduler.threads        maximum number of worker threads (default:max(16, number of processors * 4))
+ * org.riversun.promise.scheduler.keepAliveMillis keep-alive time of idle worker threads (default:60000)
+ * org.riversun.promise.scheduler.threadName     prefix of worker thread name (default:promise-worker)
+ * org.riversun.promise.scheduler.daemon         whether worker threads are daemon threads (default:true)
+ * </pre>
+ * 
+ * If the system property "org.riversun.promise.scheduler" is "virtual", the default scheduler
+ * runs each task on a virtual thread instead(see {@link PromiseScheduler#virtual()}).
+ * It falls back to this scheduler if virtual threads are not available.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+public class DefaultPromiseScheduler implements PromiseScheduler {
+
+    public static final String PROP_THREADS = "org.riversun.promise.scheduler.threads";
+    public static final String PROP_KEEP_ALIVE_MILLIS = "org.riversun.promise.scheduler.keepAliveMillis";
+    public static final String PROP_THREAD_NAME = "org.riversun.promise.scheduler.threadName";
+    public static final String PROP_DAEMON = "org.riversun.promise.scheduler.daemon";
+    public static final String PROP_SCHEDULER = "org.riversun.promise.scheduler";
+
+    private static final Logger LOGGER = Logger.getLogger(DefaultPromiseScheduler.class.getName());
+
+    private static volatile PromiseScheduler sInstance;
+
+    private final ThreadPoolExecutor mExecutor;
+
+    public DefaultPromiseScheduler() {
+        this(Integer.getInteger(PROP_THREADS, Math.max(16, Runtime.getRuntime().availableProcessors() * 4)),
+                Long.getLong(PROP_KEEP_ALIVE_MILLIS, 60000L),
+                System.getProperty(PROP_THREAD_NAME, "promise-worker"),
+                Boolean.parseBoolean(System.getProperty(PROP_DAEMON, "true")));
+    }
+
+    public DefaultPromiseScheduler(int maxThreads, long keepAliveMillis, String threadName, boolean daemon) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("maxThreads must be greater than 0. maxThreads=" + maxThreads);
+        }
+        mExecutor = new ThreadPoolExecutor(maxThreads, maxThreads, keepAliveMillis, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory(threadName, daemon));
+        // Let idle threads die, so that no threads remain while not in use
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    static PromiseScheduler getInstance() {
+        PromiseScheduler instance = sInstance;
+        if (instance == null) {
+            synchronized (DefaultPromiseScheduler.class) {
+                instance = sInstance;
+                if (instance == null) {
+                    instance = createDefault();
+                    sInstance = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    private static PromiseScheduler createDefault() {
+        if ("virtual".equals(System.getProperty(PROP_SCHEDULER))) {
+            if (VirtualThreadScheduler.isAvailable()) {
+                return VirtualThreadScheduler.getInstance();
+            }
+            LOGGER.warning("Virtual threads are not available on Java " + System.getProperty("java.version")
+                    + ", so platform threads are used.");
+        }
+        return new DefaultPromiseScheduler();
+    }
+
+    static void setInstance(PromiseScheduler scheduler) {
+        synchronized (DefaultPromiseScheduler.class) {
+            sInstance = scheduler;
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        mExecutor.execute(task);
+    }
+
+    @Override
+    public boolean isShared() {
+        return true;
+    }
+
+    @Override
+    public void shutdown() {
+        // Shared by all chains, so it is not shut down at the end of each chain
+    }
+
+    /**
+     * Returns the number of worker threads that currently exist
+     * 
+     * @return
+     */
+    public int getPoolSize() {
+        return mExecutor.getPoolSize();
+    }
+
+    @Override
+    public String toString() {
+        return "DefaultPromiseScheduler(" + mExecutor + ")";
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger mThreadNumber = new AtomicInteger(1);
+        private final String mThreadName;
+        private final boolean mDaemon;
+
+        WorkerThreadFactory(String threadName, boolean daemon) {
+            mThreadName = threadName;
+            mDaemon = daemon;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(r, mThreadName + "-" + mThreadNumber.getAndIncrement());
+            thread.setDaemon(mDaemon);
+            return thread;
+        }
+    }
+}
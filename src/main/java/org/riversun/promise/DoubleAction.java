@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2018-2019 Tom Misawa(riversun.org@gmail.com)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.promise;
+
+/**
+ * DoubleAction is the action of {@link DoublePromise}, it resolves the value as double without boxing.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+public interface DoubleAction {
+
+    /**
+     * To make the Promise's status fulfilled and move on to the next processing(specified by then) with the result(fulfillment value).
+     * 
+     * @param result
+     */
+    public void resolve(double result);
+
+    /**
+     * To make the Promise's status rejected and move on to the next processing(specified by then) with reason
+     * 
+     * @param reason
+     */
+    public void reject(Object reason);
+
+    /**
+     * To make the Promise's status rejected and move on to the next processing(specified by then) with null reason
+     */
+    public void reject();
+}
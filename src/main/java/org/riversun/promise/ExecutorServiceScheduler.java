@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2018-2019 Tom Misawa(riversun.org@gmail.com)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.promise;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Scheduler that executes tasks on the user's executor.
+ * 
+ * Since the executor is owned by the user, it will NOT be shut down automatically.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+class ExecutorServiceScheduler implements PromiseScheduler {
+
+    private final ExecutorService mExecutor;
+
+    // True if the chain created the executor, then it is shut down when the chain is finished
+    private final boolean mOwned;
+
+    ExecutorServiceScheduler(ExecutorService executor) {
+        this(executor, false);
+    }
+
+    ExecutorServiceScheduler(ExecutorService executor, boolean owned) {
+        if (executor == null) {
+            throw new NullPointerException("executor is null");
+        }
+        mExecutor = executor;
+        mOwned = owned;
+    }
+
+    ExecutorService getExecutor() {
+        return mExecutor;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        mExecutor.execute(task);
+    }
+
+    @Override
+    public boolean isShared() {
+        return !mOwned;
+    }
+
+    @Override
+    public void shutdown() {
+        if (mOwned) {
+            mExecutor.shutdown();
+        }
+        // Otherwise the user needs to shutdown the executor
+    }
+
+    @Override
+    public String toString() {
+        return "ExecutorServiceScheduler(" + mExecutor + ")";
+    }
+}
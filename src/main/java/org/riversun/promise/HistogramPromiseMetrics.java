@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2018-2019 Tom Misawa(riversun.org@gmail.com)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.promise;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Built-in PromiseMetrics that keeps a {@link PromiseHistogram} for each metric and promise name.
+ * 
+ * The promises created without a name are named uniquely, so give names to the promises to aggregate.
+ * To bound the memory, the names beyond maxNames are aggregated into {@link #OTHERS}.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+public class HistogramPromiseMetrics implements PromiseMetrics {
+
+    public static final String OTHERS = "(others)";
+
+    public static final int DEFAULT_MAX_NAMES = 1000;
+
+    private final int mMaxNames;
+    private final Set<String> mNames = ConcurrentHashMap.newKeySet();
+
+    private final ConcurrentHashMap<String, PromiseHistogram> mQueueDelay = new ConcurrentHashMap<String, PromiseHistogram>();
+    private final ConcurrentHashMap<String, PromiseHistogram> mExecutionTime = new ConcurrentHashMap<String, PromiseHistogram>();
+    private final ConcurrentHashMap<String, PromiseHistogram> mTimeToResolve = new ConcurrentHashMap<String, PromiseHistogram>();
+    private final ConcurrentHashMap<String, PromiseHistogram> mChainLatency = new ConcurrentHashMap<String, PromiseHistogram>();
+    private final ConcurrentHashMap<String, PromiseHistogram> mFanOut = new ConcurrentHashMap<String, PromiseHistogram>();
+    private final ConcurrentHashMap<String, LongAdder> mRejections = new ConcurrentHashMap<String, LongAdder>();
+
+    public HistogramPromiseMetrics() {
+        this(DEFAULT_MAX_NAMES);
+    }
+
+    public HistogramPromiseMetrics(int maxNames) {
+        if (maxNames < 1) {
+            throw new IllegalArgumentException("maxNames must be greater than 0 but was " + maxNames);
+        }
+        mMaxNames = maxNames;
+    }
+
+    @Override
+    public void recordQueueDelay(String promiseName, long nanos) {
+        histogramOf(mQueueDelay, promiseName).record(nanos);
+    }
+
+    @Override
+    public void recordExecutionTime(String promiseName, long nanos) {
+        histogramOf(mExecutionTime, promiseName).record(nanos);
+    }
+
+    @Override
+    public void recordTimeToResolve(String promiseName, long nanos) {
+        histogramOf(mTimeToResolve, promiseName).record(nanos);
+    }
+
+    @Override
+    public void recordChainLatency(String promiseName, long nanos) {
+        histogramOf(mChainLatency, promiseName).record(nanos);
+    }
+
+    @Override
+    public void recordFanOut(String promiseName, int width) {
+        histogramOf(mFanOut, promiseName).record(width);
+    }
+
+    @Override
+    public void recordRejection(String promiseName) {
+        final String name = tag(promiseName);
+        LongAdder counter = mRejections.get(name);
+        if (counter == null) {
+            final LongAdder newCounter = new LongAdder();
+            final LongAdder existing = mRejections.putIfAbsent(name, newCounter);
+            counter = existing != null ? existing : newCounter;
+        }
+        counter.increment();
+    }
+
+    private PromiseHistogram histogramOf(ConcurrentHashMap<String, PromiseHistogram> histograms, String promiseName) {
+        final String name = tag(promiseName);
+        // Look up first to avoid allocating a histogram for every record
+        final PromiseHistogram histogram = histograms.get(name);
+        if (histogram != null) {
+            return histogram;
+        }
+        final PromiseHistogram newHistogram = new PromiseHistogram();
+        final PromiseHistogram existing = histograms.putIfAbsent(name, newHistogram);
+        return existing != null ? existing : newHistogram;
+    }
+
+    private String tag(String promiseName) {
+        if (mNames.contains(promiseName)) {
+            return promiseName;
+        }
+        // May exceed maxNames slightly when racing, which is harmless
+        if (mNames.size() < mMaxNames && mNames.add(promiseName)) {
+            return promiseName;
+        }
+        return OTHERS;
+    }
+
+    /**
+     * Returns the names that have values
+     * 
+     * @return
+     */
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(mNames);
+    }
+
+    /**
+     * Returns the histogram of the queue delay in nanoseconds, or null if not recorded
+     * 
+     * @param promiseName
+     * @return
+     */
+    public PromiseHistogram getQueueDelay(String promiseName) {
+        return mQueueDelay.get(promiseName);
+    }
+
+    /**
+     * Returns the histogram of the execution time in nanoseconds, or null if not recorded
+     * 
+     * @param promiseName
+     * @return
+     */
+    public PromiseHistogram getExecutionTime(String promiseName) {
+        return mExecutionTime.get(promiseName);
+    }
+
+    /**
+     * Returns the histogram of the time to resolve in nanoseconds, or null if not recorded
+     * 
+     * @param promiseName
+     * @return
+     */
+    public PromiseHistogram getTimeToResolve(String promiseName) {
+        return mTimeToResolve.get(promiseName);
+    }
+
+    /**
+     * Returns the histogram of the chain latency in nanoseconds, or null if not recorded
+     * 
+     * @param promiseName
+     *            name of the first promise of the chain
+     * @return
+     */
+    public PromiseHistogram getChainLatency(String promiseName) {
+        return mChainLatency.get(promiseName);
+    }
+
+    /**
+     * Returns the histogram of the fan-out width, or null if not recorded
+     * 
+     * @param promiseName
+     *            "Promise.all", "Promise.race", "Promise.any", "Promise.allSettled" or "Promise.allLimited"
+     * @return
+     */
+    public PromiseHistogram getFanOut(String promiseName) {
+        return mFanOut.get(promiseName);
+    }
+
+    /**
+     * Returns the number of rejections
+     * 
+     * @param promiseName
+     * @return
+     */
+    public long getRejectionCount(String promiseName) {
+        final LongAdder counter = mRejections.get(promiseName);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Discard all the recorded values
+     */
+    public void reset() {
+        mQueueDelay.clear();
+        mExecutionTime.clear();
+        mTimeToResolve.clear();
+        mChainLatency.clear();
+        mFanOut.clear();
+        mRejections.clear();
+        mNames.clear();
+    }
+}
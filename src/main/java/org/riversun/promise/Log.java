@@ -12,18 +12,31 @@ public class Log {
         return sLogEnabled;
     }
 
+    /**
+     * Output the events of Promise to java.util.logging.
+     * It installs {@link LoggingPromiseTracer} as the PromiseTracer.
+     * 
+     * @param enabled
+     */
     public static void setLogEnabled(boolean enabled) {
 
         sLogEnabled = enabled;
 
-        if (enabled) {
-            System.setProperty("java.util.logging.SimpleFormatter.format", "%1$tY-%1$tm-%1$td %1$tH:%1$tM:%1$tS.%1$tL %5$s %6$s%n");
-            Logger rootLogger = Logger.getLogger("");
-            for (Handler handler : rootLogger.getHandlers()) {
-                handler.setLevel(Level.FINE);
+        if (!enabled) {
+            if (PromiseTracer.getInstalled() instanceof LoggingPromiseTracer) {
+                PromiseTracer.uninstall();
             }
-            rootLogger.setLevel(Level.FINE);
+            return;
         }
+
+        PromiseTracer.install(new LoggingPromiseTracer());
+
+        System.setProperty("java.util.logging.SimpleFormatter.format", "%1$tY-%1$tm-%1$td %1$tH:%1$tM:%1$tS.%1$tL %5$s %6$s%n");
+        Logger rootLogger = Logger.getLogger("");
+        for (Handler handler : rootLogger.getHandlers()) {
+            handler.setLevel(Level.FINE);
+        }
+        rootLogger.setLevel(Level.FINE);
     }
 
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2018-2019 Tom Misawa(riversun.org@gmail.com)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.promise;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * PromiseTracer that outputs the events to java.util.logging with FINE level
+ * 
+ * It is installed by {@link Log#setLogEnabled(boolean)}.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+public class LoggingPromiseTracer implements PromiseTracer {
+
+    private static final Logger LOGGER = Logger.getLogger(Promise.class.getName());
+    private static final String TAG = Promise.class.getSimpleName();
+
+    @Override
+    public void trace(long promiseId, String promiseName, Phase phase, Thread thread, Object detail) {
+
+        if (!LOGGER.isLoggable(Level.FINE)) {
+            return;
+        }
+
+        final String message = TAG + " " + promiseName + "(id=" + promiseId + ")#" + phase + " detail=" + detail + " on " + thread;
+
+        if (detail instanceof Throwable) {
+            // rejection detected
+            LOGGER.log(Level.FINE, message, (Throwable) detail);
+        } else {
+            LOGGER.fine(message);
+        }
+    }
+}
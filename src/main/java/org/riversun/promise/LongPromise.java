@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2018-2019 Tom Misawa(riversun.org@gmail.com)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.promise;
+
+/**
+ * LongPromise is the promise specialized for long value.
+ * 
+ * The value is carried from func to func as long, so no boxing occurs in the chain.
+ * 
+ * Example Code
+ * <code>
+    LongPromise.resolve(1)
+        .then((action, data) -> {
+            action.resolve(data + 1);
+        })
+        .then((action, data) -> {
+            System.out.println(data);
+            action.resolve(data);
+        })
+        .start();
+ *</code>
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+public class LongPromise extends PrimitiveChain<LongAction> {
+
+    private LongFunc mOnFulfilled;
+    private long mValue;
+
+    private LongPromise() {
+    }
+
+    private LongPromise(PromiseScheduler scheduler) {
+        super(scheduler);
+    }
+
+    /**
+     * Specify the operation to be performed after the promise processing.
+     * 
+     * @param onFulfilled
+     * @return
+     */
+    public LongPromise then(LongFunc onFulfilled) {
+        return then(onFulfilled, null);
+    }
+
+    /**
+     * Specify the operation to be performed after the promise processing.
+     * 
+     * @param onFulfilled
+     * @param onRejected
+     * @return
+     */
+    public LongPromise then(LongFunc onFulfilled, RejectedFunc<LongAction> onRejected) {
+        final LongPromise nextPromise = new LongPromise();
+        nextPromise.mOnFulfilled = onFulfilled;
+        nextPromise.setOnRejected(onRejected);
+        return link(nextPromise);
+    }
+
+    /**
+     * Start the chain
+     * 
+     * @return
+     */
+    public LongPromise start() {
+        startChain();
+        return this;
+    }
+
+    /**
+     * Returns the fulfillment value if this promise is fulfilled
+     * 
+     * @return
+     */
+    public long getValue() {
+        return mValue;
+    }
+
+    @Override
+    boolean hasOnFulfilled() {
+        return mOnFulfilled != null;
+    }
+
+    @Override
+    void storeValue(Object array, int index) {
+        ((long[]) array)[index] = mValue;
+    }
+
+    @Override
+    void receiveValue(TypedChain<?> prevNode) {
+        mValue = ((LongPromise) prevNode).mValue;
+    }
+
+    @Override
+    void runOnFulfilled(TypedChain<?> prevNode) throws Exception {
+        mOnFulfilled.run(createAction(), ((LongPromise) prevNode).mValue);
+    }
+
+    @Override
+    LongAction createAction() {
+        return new LongAction() {
+            @Override
+            public void resolve(long result) {
+                if (beginSettle()) {
+                    mValue = result;
+                    endSettle(Status.FULFILLED, null);
+                }
+            }
+
+            @Override
+            public void reject(Object reason) {
+                rejectNode(reason);
+            }
+
+            @Override
+            public void reject() {
+                reject(null);
+            }
+        };
+    }
+
+    /**
+     * Returns a LongPromise object that is fulfilled with a given data and specify scheduler
+     * 
+     * @param data
+     * @param scheduler
+     * @return
+     */
+    public static LongPromise resolve(long data, PromiseScheduler scheduler) {
+        final LongPromise promise = new LongPromise(scheduler);
+        promise.mValue = data;
+        promise.settleInitially(Status.FULFILLED, null);
+        return promise;
+    }
+
+    /**
+     * Returns a LongPromise object that is fulfilled with a given data
+     * 
+     * @param data
+     * @return
+     */
+    public static LongPromise resolve(long data) {
+        return resolve(data, null);
+    }
+
+    /**
+     * Returns a LongPromise object that is rejected with a given reason.
+     * 
+     * @param reason
+     * @return
+     */
+    public static LongPromise reject(Object reason) {
+        final LongPromise promise = new LongPromise();
+        promise.settleInitially(Status.REJECTED, reason);
+        return promise;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2018-2019 Tom Misawa(riversun.org@gmail.com)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.promise;
+
+/**
+ * Holder of the installed PromiseMetrics
+ * 
+ * Call sites check {@link #isEnabled()} before reading the clock.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+final class Metrics {
+
+    // False when "org.riversun.promise.metrics.disabled" is set at startup, then the metrics code costs nothing at all
+    static final boolean AVAILABLE = !Boolean.getBoolean("org.riversun.promise.metrics.disabled");
+
+    private static volatile PromiseMetrics sMetrics;
+
+    private Metrics() {
+    }
+
+    /**
+     * Returns true if metrics are installed, it costs one volatile read
+     */
+    static boolean isEnabled() {
+        return AVAILABLE && sMetrics != null;
+    }
+
+    static PromiseMetrics getMetrics() {
+        return sMetrics;
+    }
+
+    static void setMetrics(PromiseMetrics metrics) {
+        sMetrics = metrics;
+    }
+
+    static void recordQueueDelay(String promiseName, long nanos) {
+        final PromiseMetrics metrics = sMetrics;
+        if (metrics != null) {
+            metrics.recordQueueDelay(promiseName, nanos);
+        }
+    }
+
+    static void recordExecutionTime(String promiseName, long nanos) {
+        final PromiseMetrics metrics = sMetrics;
+        if (metrics != null) {
+            metrics.recordExecutionTime(promiseName, nanos);
+        }
+    }
+
+    static void recordTimeToResolve(String promiseName, long nanos) {
+        final PromiseMetrics metrics = sMetrics;
+        if (metrics != null) {
+            metrics.recordTimeToResolve(promiseName, nanos);
+        }
+    }
+
+    static void recordChainLatency(String promiseName, long nanos) {
+        final PromiseMetrics metrics = sMetrics;
+        if (metrics != null) {
+            metrics.recordChainLatency(promiseName, nanos);
+        }
+    }
+
+    static void recordFanOut(String promiseName, int width) {
+        final PromiseMetrics metrics = sMetrics;
+        if (metrics != null) {
+            metrics.recordFanOut(promiseName, width);
+        }
+    }
+
+    static void recordRejection(String promiseName) {
+        final PromiseMetrics metrics = sMetrics;
+        if (metrics != null) {
+            metrics.recordRejection(promiseName);
+        }
+    }
+}
@@ -22,12 +22,25 @@
  */
 package org.riversun.promise;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.logging.Logger;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * 
@@ -79,19 +92,59 @@ import java.util.logging.Logger;
  */
 public class Promise implements Thennable {
 
-    private static final Logger LOGGER = Logger.getLogger(Promise.class.getName());
-    private static final String TAG = Promise.class.getSimpleName();
+    static final String PROP_INLINE_MAX_DEPTH = "org.riversun.promise.inline.maxDepth";
 
-    private Status mStatus;
+    // Maximum nesting of the inline chains started from a func of another chain on the same thread
+    static final int INLINE_MAX_DEPTH = Integer.getInteger(PROP_INLINE_MAX_DEPTH, 16);
 
-    public String mName = "";
-    private ExecutorService mExecutor = null;
-    private boolean mIsExecutorAutoShutdown = true;
+    // Whether the class overrides createExecutor, looked up once for each class
+    private static final ClassValue<Boolean> OVERRIDES_CREATE_EXECUTOR = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                return type.getMethod("createExecutor").getDeclaringClass() != Promise.class;
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+    };
+
+    // State word of this promise. A handler promise is settled only once by CAS from PENDING, whoever comes first
+    private static final AtomicReferenceFieldUpdater<Promise, Status> STATUS = AtomicReferenceFieldUpdater.newUpdater(Promise.class, Status.class, "mStatus");
+    private volatile Status mStatus;
+
+    // Assigned only when traced
+    private long mId = 0;
+
+    // Computed on first use by getName() when not specified, since most of the names are never read.
+    // Private, so that nobody reads it before it is computed.
+    private String mName = "";
+    private PromiseScheduler mScheduler = null;
     private Promise mFounder = null;
     private Promise mParentPromise = null;
+    private CancellationToken mCancellationToken = null;
+
+    // Timeout of the chain, set on the founder
+    private long mChainTimeoutMillis = 0;
+    private PromiseTimer.Timeout mChainTimeout;
+
+    // Run the first step on the thread calling start(), set on the founder
+    private boolean mInline = false;
+
+    // Time the chain is started, set on the founder only when metrics are enabled
+    private long mStartNanos = 0;
+
+    // Timeout of the step, set on the handler promise
+    private long mStepTimeoutMillis = 0;
+    private volatile PromiseTimer.Timeout mStepTimeout;
 
     private Promise mPreviousPromise;
-    private Promise mNextPromise;
+
+    // Set by "then" and the end of the chain, whichever comes first.
+    // TERMINATED means the chain already finished at this promise and the outcome is in mStatus and mResult.
+    private static final AtomicReferenceFieldUpdater<Promise, Promise> NEXT = AtomicReferenceFieldUpdater.newUpdater(Promise.class, Promise.class, "mNextPromise");
+    private static final Promise TERMINATED = new Promise();
+    private volatile Promise mNextPromise;
 
     private Promise mOnFulfilled = null;
     private Promise mOnRejected = null;
@@ -99,28 +152,99 @@ public class Promise implements Thennable {
     private Object mResult;
     private Func mFunc;
 
+    // Result handed over from the previous promise, kept until this promise is run on the trampoline
+    private Status mReceivedStatus;
+    private Object mReceivedResult;
+
     public Promise() {
         mStatus = Status.PENDING;
     }
 
-    private String getName() {
-        return mName;
+    /**
+     * Create the next promise of the previous promise, named on first use
+     */
+    private Promise(Promise previousPromise) {
+        mStatus = Status.PENDING;
+        mName = null;
+        mScheduler = previousPromise.mScheduler;
+        mFounder = previousPromise.mFounder;
+        mPreviousPromise = previousPromise;
+
+        if (Tracing.isEnabled()) {
+            trace(PromiseTracer.Phase.CONSTRUCT, null);
+        }
     }
 
-    public Promise(String name, Func func, ExecutorService executor) {
-        this();
+    /**
+     * Returns the name of this promise.
+     * The name of the promise created by "then" is computed here on first use.
+     * 
+     * @return
+     */
+    public String getName() {
+        String name = mName;
         if (name == null) {
-            name = this.toString();
+            if (isNextPromise()) {
+                // Walk back in a loop, not recursively, since the chain can be long
+                int depth = 0;
+                Promise promise = this;
+                while (promise.mName == null && promise.isNextPromise()) {
+                    depth++;
+                    promise = promise.mPreviousPromise;
+                }
+                final StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < depth; i++) {
+                    sb.append("NextPromise-of-");
+                }
+                sb.append(promise.getName());
+                for (int i = 0; i < depth; i++) {
+                    sb.append(')');
+                }
+                name = sb.toString();
+            } else {
+                name = super.toString();
+            }
+            mName = name;
+        }
+        return name;
+    }
+
+    /**
+     * Returns true if this is the promise created by "then"
+     */
+    private boolean isNextPromise() {
+        return mPreviousPromise != null && (mParentPromise == null || mParentPromise == this);
+    }
+
+    private long getId() {
+        if (mId == 0) {
+            mId = Tracing.nextId();
         }
+        return mId;
+    }
+
+    /**
+     * Send the event to the tracer. Call only after checking {@link Tracing#isEnabled()}.
+     */
+    private void trace(PromiseTracer.Phase phase, Object detail) {
+        Tracing.trace(getId(), getName(), phase, detail);
+    }
 
+    public Promise(String name, Func func, ExecutorService executor) {
+        this(name, func, executor == null ? null : PromiseScheduler.of(executor));
+    }
+
+    // Package-private, so that "new Promise(func, null)" is not ambiguous with the ExecutorService constructors.
+    // Specify the scheduler of a chain by Promise.resolveOn(data, scheduler).
+    Promise(String name, Func func, PromiseScheduler scheduler) {
+        this();
         this.mName = name;
         this.mFunc = func;
-        if (executor != null) {
-            this.mExecutor = executor;
-            this.mIsExecutorAutoShutdown = false;
-        }
+        this.mScheduler = scheduler;
 
-        LOGGER.fine(TAG + " " + getName() + " construct() func=" + mFunc + ", executor=" + executor);
+        if (Tracing.isEnabled()) {
+            trace(PromiseTracer.Phase.CONSTRUCT, mFunc);
+        }
 
     }
 
@@ -136,18 +260,41 @@ public class Promise implements Thennable {
         this(null, func, executor);
     }
 
+    Promise(String name, PromiseScheduler scheduler) {
+        this(name, null, scheduler);
+    }
+
     public Promise(String name, Func func) {
-        this(name, func, null);
+        this(name, func, (PromiseScheduler) null);
     }
 
     public Promise(Func func) {
-        this(null, func, null);
+        this(null, func, (PromiseScheduler) null);
     }
 
+    /**
+     * Returns the scheduler to run this chain when no executor is specified.
+     * By default, the process-wide shared scheduler is used,
+     * or the executor returned by {@link #createExecutor()} if a subclass overrides it.
+     * 
+     * @return
+     */
+    public PromiseScheduler createScheduler() {
+        if (getClass() != Promise.class && OVERRIDES_CREATE_EXECUTOR.get(getClass())) {
+            // Run on the executor of the subclass as before, and shut it down when the chain is finished
+            return new ExecutorServiceScheduler(createExecutor(), true);
+        }
+        return PromiseScheduler.getDefault();
+    }
+
+    /**
+     * Called only if overridden by a subclass, the chain runs on the returned executor and shuts it down when finished.
+     * 
+     * @deprecated Override {@link #createScheduler()} instead, so that chains can share threads
+     */
+    @Deprecated
     public ExecutorService createExecutor() {
-        final ExecutorService executor = Executors.newCachedThreadPool();
-        LOGGER.fine(TAG + " " + getName() + "#createExecutor created executor=" + executor);
-        return executor;
+        return Executors.newCachedThreadPool();
     }
 
     /**
@@ -160,28 +307,48 @@ public class Promise implements Thennable {
      */
     @Override
     public Promise then(Func... funcs) {
+        Func onFulfilled = null;
+        Func onRejected = null;
 
-        LOGGER.fine(TAG + " " + getName() + "#then(funcs) funcs=" + funcs);
-
-        final List<Promise> promiseList = new ArrayList<Promise>();
-        if (funcs != null) {
-            for (Func func : funcs) {
-                final Promise promise;
-                if (func == null) {
-                    promise = null;
-                } else {
-                    promise = new Promise(func);
-                }
-                promiseList.add(promise);
+        if (funcs != null && funcs.length > 0) {
+            onFulfilled = funcs[0];
+            if (funcs.length > 1) {
+                onRejected = funcs[1];
             }
         }
+        return then(onFulfilled, onRejected);
+    }
+
+    /**
+     * Same as {@link #then(Func...)} without the array of the arguments
+     * 
+     * @param onFulfilled
+     * @return Promise
+     */
+    public Promise then(Func onFulfilled) {
+        return then(onFulfilled, (Func) null);
+    }
 
-        return then(promiseList.toArray(new Promise[0]));
+    public Promise then(Func onFulfilled, Func onRejected) {
+        return then(null, onRejected == null ? null : new Promise(onRejected), onFulfilled);
+    }
+
+    /**
+     * Specify the operation to be performed after the promise processing.
+     * The step is rejected with TimeoutException unless the func calls resolve or reject within the time.
+     * 
+     * @param onFulfilled
+     * @param timeoutMillis
+     * @return Promise
+     */
+    public Promise then(Func onFulfilled, long timeoutMillis) {
+        final Promise promise = new Promise(onFulfilled);
+        promise.mStepTimeoutMillis = timeoutMillis;
+        return then(promise);
     }
 
     @Override
     public Promise always(Thennable promise) {
-        LOGGER.fine(TAG + " " + getName() + "#always promise=" + promise);
         return then(promise, promise);
     }
 
@@ -193,7 +360,6 @@ public class Promise implements Thennable {
 
     @Override
     public Promise then(Thennable... promises) {
-        LOGGER.fine(TAG + " " + getName() + "#then(promises) promises=" + promises);
         Thennable onFulfilled = null;
         Thennable onRejected = null;
 
@@ -203,10 +369,18 @@ public class Promise implements Thennable {
                 onRejected = promises[1];
             }
         }
-        // Create executor at first access
-        if (mExecutor == null) {
-            mExecutor = createExecutor();
-            LOGGER.fine(TAG + " " + getName() + "#then(promises) executor for ths promise is created=" + mExecutor);
+        return then((Promise) onFulfilled, (Promise) onRejected, null);
+    }
+
+    /**
+     * @param fulfilledFunc
+     *            if specified, the next promise runs it by itself as the handler of "fulfilled",
+     *            so that a step of "then(func)" is only one promise
+     */
+    private Promise then(Promise onFulfilled, Promise onRejected, Func fulfilledFunc) {
+        // Decide scheduler at first access
+        if (mScheduler == null) {
+            mScheduler = createScheduler();
         }
 
         // Remember "ancestor" promise at first access
@@ -214,68 +388,229 @@ public class Promise implements Thennable {
             mFounder = Promise.this;
         }
 
-        mNextPromise = createNextPromise("NextPromise-of-" + mName + ")", (Promise) onFulfilled, (Promise) onRejected);
-        LOGGER.fine(TAG + " " +
-                getName() + "#then(promises) createNextPromise from onFulfilled=" + onFulfilled + " and onRejected=" + onRejected + " result next promise =" + mNextPromise);
+        final Promise nextPromise = createNextPromise(onFulfilled, onRejected);
+        if (fulfilledFunc != null) {
+            nextPromise.mFunc = fulfilledFunc;
+            nextPromise.mOnFulfilled = nextPromise;
+            nextPromise.populateParentPromise(nextPromise);
+        }
+        if (Tracing.isEnabled()) {
+            trace(PromiseTracer.Phase.THEN, nextPromise);
+        }
 
         // Warning:If you don't "ignite" after all "#then"s called, an inconsistency will occur.
         // Do not call ignite before returning all mNextPromise by all of "#then"s
         // So I added the "Promise#start" method to start reliably after calling all "then".
         // ignite();//<=bad practice
 
-        return mNextPromise;
+        for (;;) {
+            final Promise crrNextPromise = mNextPromise;
+            if (crrNextPromise == TERMINATED) {
+                // The chain has already finished here, so continue it with the outcome
+                continueTerminatedChain(nextPromise);
+                break;
+            }
+            if (NEXT.compareAndSet(this, crrNextPromise, nextPromise)) {
+                break;
+            }
+        }
+
+        return nextPromise;
+    }
+
+    /**
+     * Run the promise added by "then" after the chain finished at this promise
+     */
+    private void continueTerminatedChain(final Promise nextPromise) {
+        // The volatile read of TERMINATED makes the outcome visible
+        nextPromise.mReceivedStatus = mStatus;
+        nextPromise.mReceivedResult = mResult;
+        nextPromise.runOnScheduler();
+    }
+
+    /**
+     * Run this promise on the trampoline of a thread of the scheduler
+     */
+    private void runOnScheduler() {
+        runOnThread(new Runnable() {
+            @Override
+            public void run() {
+                Trampoline.get().run(Promise.this);
+            }
+        });
+    }
+
+    /**
+     * Attach the cancellation token to the chain this promise belongs to.
+     * Call before {@link #start()}.
+     * 
+     * @param cancellationToken
+     * @return this
+     */
+    public Promise withCancellationToken(CancellationToken cancellationToken) {
+        if (mFounder == null) {
+            mFounder = Promise.this;
+        }
+        mFounder.mCancellationToken = cancellationToken;
+        return Promise.this;
+    }
+
+    /**
+     * Reject the chain this promise belongs to with TimeoutException unless it finishes within the time after {@link #start()}.
+     * On timeout, the chain is cancelled in the same way as {@link CancellationToken#cancel(Object)}.
+     * 
+     * @param timeoutMillis
+     * @return this
+     */
+    public Promise timeout(long timeoutMillis) {
+        if (mFounder == null) {
+            mFounder = Promise.this;
+        }
+        mFounder.mChainTimeoutMillis = timeoutMillis;
+        return Promise.this;
+    }
+
+    /**
+     * Run the first step of the chain this promise belongs to on the thread calling {@link #start()},
+     * instead of handing it to the scheduler.
+     * Call before {@link #start()}.
+     * 
+     * Suitable for chains of cheap steps, such as transformations of an already known value.
+     * If start() is called from a func of another chain, the chain runs nested in it,
+     * and falls back to the scheduler when the nesting is deeper than "org.riversun.promise.inline.maxDepth"(default:16).
+     * 
+     * @return this
+     */
+    public Promise inline() {
+        if (mFounder == null) {
+            mFounder = Promise.this;
+        }
+        mFounder.mInline = true;
+        return Promise.this;
     }
 
     @Override
     public Promise start() {
-        LOGGER.fine(TAG + " " + getName() + "#start mFounder=" + mFounder);
+        if (Tracing.isEnabled()) {
+            trace(PromiseTracer.Phase.START, mFounder);
+        }
+        if (Metrics.isEnabled()) {
+            mFounder.mStartNanos = System.nanoTime();
+        }
+        if (mFounder.mChainTimeoutMillis > 0) {
+            mFounder.armChainTimeout();
+        }
         mFounder.ignite();
         return Promise.this;
     }
 
+    private void armChainTimeout() {
+        if (mCancellationToken == null) {
+            mCancellationToken = new CancellationToken();
+        }
+        final CancellationToken cancellationToken = mCancellationToken;
+        final long timeoutMillis = mChainTimeoutMillis;
+
+        mChainTimeout = PromiseTimer.getInstance().schedule(new Runnable() {
+            @Override
+            public void run() {
+                cancellationToken.cancel(new TimeoutException("Promise timed out after " + timeoutMillis + " ms"));
+            }
+        }, timeoutMillis);
+    }
+
     /**
      * Run first procedure
      */
     private void ignite() {
 
-        LOGGER.fine(TAG + " " + getName() + "#ignite mPreviousPromise=" + mPreviousPromise);
-
         if (mPreviousPromise == null) {
 
-            // first "then" call
-            LOGGER.fine(TAG + " " + getName() + "#ignite first call! on " + Thread.currentThread());
+            if (mInline) {
+                final Trampoline trampoline = Trampoline.enterInline();
+                if (trampoline != null) {
+                    // Run on this thread without the context switch
+                    try {
+                        igniteNow();
+                    } finally {
+                        Trampoline.exitInline(trampoline);
+                    }
+                    return;
+                }
+                // Nested too deep, so run on the scheduler
+            }
 
+            // first "then" call
             runOnThread(new Runnable() {
                 @Override
                 public void run() {
-                    try {
-                        LOGGER.fine(TAG + " " + getName() + "#ignite first call doNext mNextPromise=" + mNextPromise + " mResult=" + mResult);
-                        doNext(mNextPromise, mResult);
-                    } catch (Exception e) {
-                        if (mExecutor != null && mIsExecutorAutoShutdown) {
-                            mExecutor.shutdown();
-                        }
-                        e.printStackTrace();
-                    }
+                    igniteNow();
                 }
             });
         }
     }
 
-    private void invokeFunction(final Object previousPromiseResult) {
+    private void igniteNow() {
+        try {
+            if (Tracing.isEnabled()) {
+                trace(PromiseTracer.Phase.IGNITE, mResult);
+            }
+            doNext(mNextPromise, mResult);
+        } catch (Exception e) {
+            if (mScheduler != null && !mScheduler.isShared()) {
+                mScheduler.shutdown();
+            }
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Run the func of this handler promise
+     * 
+     * @param previousPromiseResult
+     * @param cancellationToken
+     *            token of the chain
+     * @param tracked
+     *            true if this step is tracked by the token, it means it can be cancelled while running
+     */
+    private void invokeFunction(final Object previousPromiseResult, final CancellationToken cancellationToken, final boolean tracked) {
+
+        if (mStepTimeoutMillis > 0) {
+            final long timeoutMillis = mStepTimeoutMillis;
+            mStepTimeout = PromiseTimer.getInstance().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    rejectPendingStep(new TimeoutException("Promise step timed out after " + timeoutMillis + " ms"));
+                }
+            }, timeoutMillis);
+        }
+
+        final long runNanos = Metrics.isEnabled() ? System.nanoTime() : 0;
 
         try {
 
             Promise.this.mFunc.run(new Action() {
                 @Override
                 public void resolve(Object result) {
-                    mStatus = Status.FULFILLED;
+                    if (!trySettle(Status.FULFILLED)) {
+                        // Already settled by the func, the cancellation or the timeout
+                        return;
+                    }
+                    if (runNanos != 0) {
+                        Metrics.recordTimeToResolve(getName(), System.nanoTime() - runNanos);
+                    }
                     onFinish(result);
                 }
 
                 @Override
                 public void reject(Object result) {
-                    mStatus = Status.REJECTED;
+                    if (!trySettle(Status.REJECTED)) {
+                        return;
+                    }
+                    if (runNanos != 0) {
+                        Metrics.recordTimeToResolve(getName(), System.nanoTime() - runNanos);
+                        Metrics.recordRejection(getName());
+                    }
                     onFinish(result);
                 }
 
@@ -288,105 +623,226 @@ public class Promise implements Thennable {
                 public void reject() {
                     reject(null);
                 }
+
+                @Override
+                public CancellationToken getCancellationToken() {
+                    return cancellationToken;
+                }
             }, previousPromiseResult);
 
         } catch (Exception e) {
             // e.printStackTrace();
-            mStatus = Status.REJECTED;
-            onFinish(e);
+            if (trySettle(Status.REJECTED)) {
+                if (runNanos != 0) {
+                    Metrics.recordTimeToResolve(getName(), System.nanoTime() - runNanos);
+                    Metrics.recordRejection(getName());
+                }
+                onFinish(e);
+            }
+
+        } finally {
+            if (runNanos != 0) {
+                Metrics.recordExecutionTime(getName(), System.nanoTime() - runNanos);
+            }
+            if (tracked) {
+                cancellationToken.exit();
+            }
+        }
+
+    }
+
+    /**
+     * Settle this step with the status, only the first call wins
+     * 
+     * @return false if already settled
+     */
+    boolean trySettle(Status status) {
+        if (!STATUS.compareAndSet(this, Status.PENDING, status)) {
+            return false;
+        }
+        final PromiseTimer.Timeout stepTimeout = mStepTimeout;
+        if (stepTimeout != null) {
+            stepTimeout.cancel();
+        }
+        final CancellationToken cancellationToken = mFounder.mCancellationToken;
+        if (cancellationToken != null) {
+            cancellationToken.settle(this);
+        }
+        return true;
+    }
+
+    /**
+     * Reject this step that is still running, on the timeout
+     */
+    private void rejectPendingStep(Object reason) {
+        if (trySettle(Status.REJECTED)) {
+            rejectSettledStep(reason);
+        }
+    }
 
+    /**
+     * Reject this step after {@link #trySettle(Status)} succeeded with REJECTED
+     */
+    void rejectSettledStep(final Object reason) {
+        if (Metrics.isEnabled()) {
+            Metrics.recordRejection(getName());
         }
 
+        // Run the rest of the chain on the scheduler, not on the thread that cancelled
+        runOnThread(new Runnable() {
+            @Override
+            public void run() {
+                onFinish(reason);
+            }
+        });
     }
 
     private void onFinish(Object result) {
 
-        final Object crrResult = result;
+        if (Tracing.isEnabled()) {
+            trace(PromiseTracer.Phase.FINISH, result);
+        }
+
+        final Promise nextPromise = mParentPromise.handOver(mStatus, result);
+
+        if (nextPromise != null) {
+            doNext(nextPromise, result);
+        }
+    }
+
+    /**
+     * Hand over the outcome of this step to the next promise, or finish the chain here if there is none yet
+     * 
+     * @return the next promise, or null if the chain is finished here
+     */
+    private Promise handOver(Status status, Object result) {
 
-        final Promise nextPromise = mParentPromise.mNextPromise;
+        Promise nextPromise = mNextPromise;
 
-        LOGGER.fine(TAG + " " + getName() + "#onFinish result=" + result + " nextPromise=" + nextPromise);
+        if (nextPromise == null) {
+            // Keep the outcome for a "then" racing with the end of the chain, it runs the rest by itself
+            mResult = result;
+            mStatus = status;
+            if (!NEXT.compareAndSet(this, null, TERMINATED)) {
+                // "then" won the race
+                nextPromise = mNextPromise;
+            }
+        }
 
         if (nextPromise != null) {
-            doNext(nextPromise, crrResult);
-        } else {
-            // means "nextPromise == null"
+            return nextPromise;
+        }
 
-            // Since there is no next promise,it means that the execution is the last here.
-            // So shut down the executor
+        // Since there is no next promise,it means that the execution is the last here.
+        final Promise founder = mFounder;
+        if (founder.mChainTimeout != null) {
+            founder.mChainTimeout.cancel();
+        }
+        if (founder.mStartNanos != 0 && Metrics.isEnabled()) {
+            Metrics.recordChainLatency(founder.getName(), System.nanoTime() - founder.mStartNanos);
+        }
 
-            if (mParentPromise.mIsExecutorAutoShutdown) {
-                LOGGER.fine(TAG + " " + getName() + "#onFinish executor(" + mParentPromise.mExecutor + ")  SHUTDOWN!!");
-                mParentPromise.mExecutor.shutdown();
-            } else {
-                LOGGER.fine(TAG + " " + getName() + "#onFinish executor(" + mParentPromise.mExecutor + ")  It is a phase to SHUTDOWN, but does NOT SHUTDOWN because the original executor is set.");
+        // So shut down the scheduler if it is owned by this chain
+
+        if (!mScheduler.isShared()) {
+            if (Tracing.isEnabled()) {
+                trace(PromiseTracer.Phase.SHUTDOWN, mScheduler);
             }
+            mScheduler.shutdown();
+        } else {
+            // It is a phase to SHUTDOWN, but does NOT SHUTDOWN because the scheduler is shared.
         }
+        return null;
     }
 
     private void doNext(Promise nextPromise, Object crrResult) {
-        LOGGER.fine(TAG + " " + getName() + "#doNext mStatus=" + mStatus + " crrResult=" + crrResult);
-        if (Log.isLogEnabled() && crrResult != null && crrResult instanceof Exception) {
-            LOGGER.fine(TAG + " " + getName() + "#doNext rejection detected.");
-            ((Exception) crrResult).printStackTrace();
+        if (Tracing.isEnabled()) {
+            trace(mStatus == Status.REJECTED ? PromiseTracer.Phase.REJECT : PromiseTracer.Phase.RESOLVE, crrResult);
+        }
+        if (mStatus == Status.PENDING) {
+            throw new RuntimeException("Cannot proceed operation with PENDING promise, please call Promise.resolve to start chain.");
         }
-        switch (mStatus) {
-        case FULFILLED:
 
-            if (nextPromise.mOnFulfilled == null) {
-                // Skip if resolve is not explicitly set
-                final Promise skipPromise = new Promise("skipper(fulfilled)", new Func() {
-                    @Override
-                    public void run(Action action, Object data) {
-                        // skip
-                        action.resolve(data);
+        // Hand over the result to the next promise and run it on the trampoline of this thread.
+        // If the trampoline is already running on this thread(it means this is called synchronously from a func),
+        // the next promise is run after returning from the func instead of recursively.
+        nextPromise.mReceivedStatus = mStatus;
+        nextPromise.mReceivedResult = crrResult;
+        Trampoline.get().run(nextPromise);
+    }
+
+    /**
+     * Run the handler of this promise with the result received from the previous promise
+     */
+    private void proceed() {
+
+        Object crrResult = mReceivedResult;
+        mReceivedResult = null;
+
+        Promise nextPromise = Promise.this;
+        final CancellationToken cancellationToken = mFounder.mCancellationToken;
+
+        Status receivedStatus = mReceivedStatus;
+
+        for (;;) {
+
+            if (receivedStatus == Status.FULFILLED) {
+
+                final Promise onFulfilled = nextPromise.mOnFulfilled;
+
+                if (cancellationToken == null || !cancellationToken.isCancelled()) {
+                    if (onFulfilled == null) {
+                        // No handler for "fulfilled", so hand over the result to the next promise as it is
+                        nextPromise = nextPromise.handOver(receivedStatus, crrResult);
+                        if (nextPromise == null) {
+                            return;
+                        }
+                        continue;
                     }
-                });
-                // If there is no next promise to receive the "fulfilled" of the previous promise,
-                // Also, move to the next to continue "then" chain.
-                nextPromise.mOnFulfilled = skipPromise;
-                nextPromise.mOnFulfilled.populateParentPromise(nextPromise);
-            }
 
-            try {
-                LOGGER.fine(TAG + " " + getName() + " RUNNING " + nextPromise.mOnFulfilled.getName() + " crrResult=" + crrResult + " on " + Thread.currentThread());
-                nextPromise.mOnFulfilled.invokeFunction(crrResult);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-            break;
-        case REJECTED:
-            if (nextPromise.mOnRejected == null) {
-                // Skip if reject is not explicitly set
-                final Promise skipPromise = new Promise("skipper(rejected)", new Func() {
-                    @Override
-                    public void run(Action action, Object data) {
-                        // skip
-                        action.reject(data);
+                    if (cancellationToken == null || cancellationToken.enter(onFulfilled)) {
+                        try {
+                            if (Tracing.isEnabled()) {
+                                onFulfilled.trace(PromiseTracer.Phase.RUN, crrResult);
+                            }
+                            onFulfilled.invokeFunction(crrResult, cancellationToken, cancellationToken != null);
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                        return;
                     }
-                });
-                // If there is no next promise to receive the "rejected" of the previous promise,
-                // Also, move to the next to continue "then" chain.
-                nextPromise.mOnRejected = skipPromise;
-                nextPromise.mOnRejected.populateParentPromise(nextPromise);
+                }
+
+                // The chain is cancelled, so skip this step and hand over the reason to the rejection handler
+                receivedStatus = Status.REJECTED;
+                crrResult = cancellationToken.getReason();
             }
 
-            nextPromise.mOnRejected.invokeFunction(crrResult);
-            break;
-        case PENDING:
-            throw new RuntimeException("Cannot proceed operation with PENDING promise, please call Promise.resolve to start chain.");
-        }
-    }
+            final Promise onRejected = nextPromise.mOnRejected;
 
-    private Promise createNextPromise(String promiseName, Promise onFulfilled, Promise onRejected) {
+            if (onRejected == null) {
+                // No handler for "rejected", so hand over the reason to the next promise as it is
+                nextPromise = nextPromise.handOver(receivedStatus, crrResult);
+                if (nextPromise == null) {
+                    return;
+                }
+                continue;
+            }
 
-        final Promise nextPromise = new Promise(promiseName, (Func) null);
+            // Rejection handlers run even after the cancellation to receive the reason, but are no longer tracked
+            final boolean tracked = cancellationToken != null && cancellationToken.enter(onRejected);
+
+            if (Tracing.isEnabled()) {
+                onRejected.trace(PromiseTracer.Phase.RUN, crrResult);
+            }
+            onRejected.invokeFunction(crrResult, cancellationToken, tracked);
+            return;
+        }
+    }
 
-        nextPromise.mExecutor = Promise.this.mExecutor;
-        nextPromise.mIsExecutorAutoShutdown = Promise.this.mIsExecutorAutoShutdown;
+    private Promise createNextPromise(Promise onFulfilled, Promise onRejected) {
 
-        nextPromise.mFounder = Promise.this.mFounder;
-        nextPromise.mPreviousPromise = Promise.this;
+        final Promise nextPromise = new Promise(Promise.this);
 
         if (onFulfilled != null) {
             nextPromise.mOnFulfilled = onFulfilled;
@@ -403,13 +859,23 @@ public class Promise implements Thennable {
     private void populateParentPromise(Promise parentPromise) {
         mParentPromise = parentPromise;
         mPreviousPromise = parentPromise.mPreviousPromise;
-        mExecutor = parentPromise.mExecutor;
-        mIsExecutorAutoShutdown = parentPromise.mIsExecutorAutoShutdown;
+        mScheduler = parentPromise.mScheduler;
         mFounder = parentPromise.mFounder;
     }
 
-    public void runOnThread(Runnable r) {
-        mExecutor.submit(r);
+    public void runOnThread(final Runnable r) {
+        if (Metrics.isEnabled()) {
+            final long queuedNanos = System.nanoTime();
+            mScheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Metrics.recordQueueDelay(getName(), System.nanoTime() - queuedNanos);
+                    r.run();
+                }
+            });
+            return;
+        }
+        mScheduler.execute(r);
     }
 
     @Override
@@ -430,21 +896,31 @@ public class Promise implements Thennable {
      * @return
      */
     public static Promise resolve(Object data, ExecutorService executor) {
-        LOGGER.fine(TAG + " " + "Promise.resolve data=" + data + " executor=" + executor);
-        final Promise promise = new Promise("Promise.Resolve.Created", executor);
-        promise.mStatus = Status.FULFILLED;
-        promise.mResult = data;
-        return promise;
+        return resolveOn(data, executor == null ? null : PromiseScheduler.of(executor));
     }
 
     /**
-     * Returns a Promise object that is fulfilled with a given data
+     * Returns a Promise object that is fulfilled with a given data and specify scheduler
      * 
      * @param data
+     * @param scheduler
      * @return
      */
-    public static Promise resolve(Object data) {
-        return resolve(data, null);
+    public static Promise resolveOn(Object data, PromiseScheduler scheduler) {
+        final Promise promise = new Promise("Promise.Resolve.Created", scheduler);
+        promise.mStatus = Status.FULFILLED;
+        promise.mResult = data;
+        return promise;
+    }
+
+    /**
+     * Returns a Promise object that is fulfilled with a given data
+     * 
+     * @param data
+     * @return
+     */
+    public static Promise resolve(Object data) {
+        return resolveOn(data, null);
     }
 
     /**
@@ -454,7 +930,7 @@ public class Promise implements Thennable {
      * @return
      */
     public static Promise resolve() {
-        return resolve(null, null);
+        return resolveOn(null, null);
     }
 
     /**
@@ -480,9 +956,169 @@ public class Promise implements Thennable {
         return reject(null);
     }
 
-    private static final class Holder {
-        public Object result;
-        public boolean rejected = false;
+    /**
+     * Returns a Promise object that is settled when the CompletionStage completes.
+     * 
+     * The promise is fulfilled with the value of the stage, or rejected with the exception of the stage
+     * (the cause of CompletionException, or the reason carried by PromiseException).
+     * No thread waits for the stage, the rest of the chain runs on the thread that completes the stage.
+     * 
+     * @param stage
+     * @return
+     */
+    public static Promise from(CompletionStage<?> stage) {
+        return from(stage, (PromiseScheduler) null);
+    }
+
+    public static Promise from(final CompletionStage<?> stage, PromiseScheduler scheduler) {
+
+        final Promise stagePromise = new Promise("Promise.from(" + stage + ")", new Func() {
+            @Override
+            public void run(final Action action, Object data) throws Exception {
+                stage.whenComplete(new BiConsumer<Object, Throwable>() {
+                    @Override
+                    public void accept(Object value, Throwable throwable) {
+                        if (throwable == null) {
+                            action.resolve(value);
+                        } else {
+                            action.reject(PromiseException.toReason(throwable));
+                        }
+                    }
+                });
+            }
+        });
+
+        final Promise starterOfStagePromise = new Promise(stagePromise.getName() + ".Starter", scheduler);
+        starterOfStagePromise.mStatus = Status.FULFILLED;
+
+        return starterOfStagePromise.then(stagePromise);
+    }
+
+    /**
+     * Start the chain and returns CompletableFuture that is completed with the result of this promise.
+     * Call this instead of {@link #start()}.
+     * 
+     * If rejected, the future is completed exceptionally with the reason,
+     * or with PromiseException that holds the reason if the reason is not a Throwable.
+     * 
+     * @return
+     */
+    public CompletableFuture<Object> toCompletableFuture() {
+
+        final CompletableFuture<Object> future = new CompletableFuture<Object>();
+
+        then(new Promise("Promise.toCompletableFuture [FULFILLED]", new Func() {
+            @Override
+            public void run(Action action, Object data) throws Exception {
+                future.complete(data);
+                action.resolve(data);
+            }
+        }), new Promise("Promise.toCompletableFuture [REJECTED]", new Func() {
+            @Override
+            public void run(Action action, Object data) throws Exception {
+                future.completeExceptionally(PromiseException.toThrowable(data));
+                action.reject(data);
+            }
+        })).start();
+
+        return future;
+    }
+
+    /**
+     * Trampoline runs the promises of chains one by one in a loop on the current thread.
+     * 
+     * When a func calls "resolve" synchronously, the next promise is queued and run
+     * after the func returns, so the stack does not grow however long the chain is.
+     * When "resolve" is called on another thread, the loop starts on that thread,
+     * so no extra executor hop is needed.
+     */
+    private static final class Trampoline {
+
+        private static final ThreadLocal<Trampoline> sTrampoline = new ThreadLocal<Trampoline>() {
+            @Override
+            protected Trampoline initialValue() {
+                return new Trampoline();
+            }
+        };
+
+        private final ArrayDeque<Promise> mQueue = new ArrayDeque<Promise>();
+        private boolean mRunning = false;
+
+        // Nesting of the loops on this thread for the inline chains, the inner one is reused
+        private final int mDepth;
+        private Trampoline mInner;
+
+        Trampoline() {
+            this(0);
+        }
+
+        private Trampoline(int depth) {
+            mDepth = depth;
+        }
+
+        static Trampoline get() {
+            return sTrampoline.get();
+        }
+
+        /**
+         * Make the promises handed over on this thread run right away in a loop nested in the running one, if any.
+         * 
+         * @return the trampoline to restore by {@link #exitInline(Trampoline)}, or null if the nesting is too deep
+         */
+        static Trampoline enterInline() {
+            final Trampoline current = sTrampoline.get();
+            if (!current.mRunning) {
+                return current;
+            }
+            if (current.mDepth >= INLINE_MAX_DEPTH) {
+                return null;
+            }
+            Trampoline inner = current.mInner;
+            if (inner == null) {
+                inner = new Trampoline(current.mDepth + 1);
+                current.mInner = inner;
+            }
+            sTrampoline.set(inner);
+            return current;
+        }
+
+        static void exitInline(Trampoline trampoline) {
+            sTrampoline.set(trampoline);
+        }
+
+        void run(Promise promise) {
+
+            mQueue.add(promise);
+
+            if (mRunning) {
+                // The loop on this thread will run it
+                return;
+            }
+
+            mRunning = true;
+            try {
+                Promise crrPromise;
+                while ((crrPromise = mQueue.poll()) != null) {
+                    try {
+                        crrPromise.proceed();
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+            } finally {
+                mRunning = false;
+                // Not empty only when an Error is thrown by a func, then hand over the rest
+                // so that they do not run in a chain started later on this thread
+                Promise leftPromise;
+                while ((leftPromise = mQueue.poll()) != null) {
+                    try {
+                        leftPromise.runOnScheduler();
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
     }
 
     /**
@@ -493,10 +1129,9 @@ public class Promise implements Thennable {
      * if you pass in four promises that resolve after a sleep and one promise
      * that rejects immediately, then Promise.all will reject immediately.
      * 
-     * Since each promise is executed on its own worker thread, the
-     * execution of the promise itself continues on the worker thread.
-     * But, once reject received, Promise.all will move on to then when it receives
-     * reject even if the worker thread is moving
+     * Once rejected, the other promises are cancelled.
+     * The promises not started yet are skipped and the threads running the
+     * promises are interrupted.
      * 
      * If fulfilled, all results are returned as "List<Object>" at
      * {@link Func#run(Action, List<Object>)} method.
@@ -509,30 +1144,295 @@ public class Promise implements Thennable {
      * 
      */
     public static Promise all(Thennable... promises) {
-        ExecutorService executor = null;
-        return all(executor, promises);
+        PromiseScheduler scheduler = null;
+        return allOn(scheduler, promises);
     }
 
     public static Promise all(final ExecutorService executor, Thennable... promises) {
+        return allOn(executor == null ? null : PromiseScheduler.of(executor), promises);
+    }
 
-        LOGGER.fine(TAG + " " + "Promise.all executor=" + executor + " promises=" + promises);
+    public static Promise allOn(final PromiseScheduler scheduler, Thennable... promises) {
 
-        final ExecutorService _executor;
+        if (promises == null || promises.length == 0) {
+            // If an empty iterable is passed, then this method returns an
+            // already resolved promise.
+            return Promise.resolve();
+        }
 
-        if (executor == null) {
-            _executor = Executors.newCachedThreadPool();
+        return combine(Combination.ALL, scheduler, promises);
+    }
+
+    /**
+     * Promise.all waits for all fulfillments (or the first rejection).
+     * 
+     * Promise.all is rejected if any of the elements are rejected.
+     * For example,
+     * if you pass in four funcs that resolve after a sleep and one func
+     * that rejects immediately, then Promise.all will reject immediately.
+     * 
+     * Once rejected, the other funcs are cancelled.
+     * 
+     * If fulfilled, all results are returned as "List<Object>" at
+     * {@link Func#run(Action, List<Object>)} method.
+     * 
+     * If rejected, only rejected func results will be returned as "Error" at
+     * {@link Func#run(Action, Error)} method.
+     * 
+     * @param funcs
+     * @return
+     * 
+     */
+
+    public static Promise all(Func... funcs) {
+        return allOn(null, funcs);
+    }
+
+    public static Promise all(ExecutorService executor, Func... funcs) {
+        return allOn(executor == null ? null : PromiseScheduler.of(executor), funcs);
+    }
+
+    public static Promise allOn(PromiseScheduler scheduler, Func... funcs) {
+        if (funcs == null || funcs.length == 0) {
+            final Object data = null;
+            return Promise.resolveOn(data, scheduler);
+        }
+        return Promise.allOn(scheduler, toPromises(funcs));
+    }
+
+    /**
+     * Promise.allLimited runs the funcs like Promise.all, but at most "concurrency" funcs at the same time.
+     * 
+     * The funcs are pulled from the iterable lazily, only when there is room for them,
+     * so the memory is proportional to the concurrency plus the results, not to the number of the funcs.
+     * 
+     * If fulfilled, all results are returned as "List<Object>" in the order of the iterable
+     * (an empty list if the iterable is empty).
+     * If rejected, the funcs running are cancelled, no more funcs are pulled and
+     * the first rejection reason is returned.
+     * 
+     * @param concurrency
+     * @param funcs
+     * @return
+     */
+    public static Promise allLimited(int concurrency, Iterable<? extends Func> funcs) {
+        return allLimited(null, concurrency, funcs);
+    }
+
+    /**
+     * Promise.allLimited over the stream. The stream is consumed lazily.
+     * 
+     * @param concurrency
+     * @param funcs
+     * @return
+     */
+    public static Promise allLimited(int concurrency, final Stream<? extends Func> funcs) {
+        return allLimited(null, concurrency, funcs);
+    }
+
+    public static Promise allLimited(PromiseScheduler scheduler, int concurrency, final Stream<? extends Func> funcs) {
+        return allLimited(scheduler, concurrency, new Iterable<Func>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public Iterator<Func> iterator() {
+                return (Iterator<Func>) funcs.iterator();
+            }
+        });
+    }
+
+    public static Promise allLimited(PromiseScheduler scheduler, final int concurrency, final Iterable<? extends Func> funcs) {
+
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be greater than 0. concurrency=" + concurrency);
+        }
+
+        final PromiseScheduler _scheduler;
+
+        if (scheduler == null) {
+            _scheduler = PromiseScheduler.getDefault();
+        } else {
+            _scheduler = scheduler;
+        }
+
+        final Promise workersPromise = new Promise("Promise.allLimited(" + concurrency + ")", new Func() {
+            @Override
+            public void run(Action _action, Object data) throws Exception {
+                new LimitedCombiner(_scheduler, concurrency, funcs.iterator(), _action).start();
+            }
+        });
+
+        final Promise starterOfWorkersPromise = new Promise(workersPromise.getName() + ".Starter", _scheduler);
+        starterOfWorkersPromise.mStatus = Status.FULFILLED;
+
+        return starterOfWorkersPromise.then(workersPromise);
+    }
+
+    /**
+     * Promise.retry runs the func again when it is rejected, following the policy.
+     * 
+     * The waits between the attempts are scheduled on a shared timer, so no thread is held while waiting.
+     * If the policy gives up, Promise.retry is rejected with {@link PromiseRetryException}
+     * that holds the rejection reasons of all the attempts.
+     * 
+     * @param func
+     * @param policy
+     * @return
+     */
+    public static Promise retry(Func func, RetryPolicy policy) {
+        return retry((PromiseScheduler) null, func, policy);
+    }
+
+    public static Promise retry(PromiseScheduler scheduler, final Func func, final RetryPolicy policy) {
+
+        if (func == null || policy == null) {
+            throw new NullPointerException("func and policy must not be null");
+        }
+
+        final PromiseScheduler _scheduler;
+
+        if (scheduler == null) {
+            _scheduler = PromiseScheduler.getDefault();
         } else {
-            _executor = executor;
+            _scheduler = scheduler;
         }
 
+        final Promise retryPromise = new Promise("Promise.retry(" + policy + ")", new Func() {
+            @Override
+            public void run(Action _action, Object data) throws Exception {
+                new Retrier(_scheduler, func, policy, _action, data).start();
+            }
+        });
+
+        final Promise starterOfRetryPromise = new Promise(retryPromise.getName() + ".Starter", _scheduler);
+        starterOfRetryPromise.mStatus = Status.FULFILLED;
+
+        return starterOfRetryPromise.then(retryPromise);
+    }
+
+    /**
+     * Promise.race is settled with the first element to be settled,
+     * whether it is fulfilled or rejected.
+     * 
+     * Once settled, the other promises are cancelled.
+     * The promises not started yet are skipped and the threads running the
+     * promises are interrupted.
+     * 
+     * If an empty iterable is passed, returns an already resolved promise.
+     * 
+     * @param promises
+     * @return
+     */
+    public static Promise race(Thennable... promises) {
+        return race((PromiseScheduler) null, promises);
+    }
+
+    public static Promise race(PromiseScheduler scheduler, Thennable... promises) {
+        if (promises == null || promises.length == 0) {
+            return Promise.resolve();
+        }
+        return combine(Combination.RACE, scheduler, promises);
+    }
+
+    public static Promise race(Func... funcs) {
+        return race((PromiseScheduler) null, funcs);
+    }
+
+    public static Promise race(PromiseScheduler scheduler, Func... funcs) {
+        if (funcs == null || funcs.length == 0) {
+            final Object data = null;
+            return Promise.resolveOn(data, scheduler);
+        }
+        return race(scheduler, toPromises(funcs));
+    }
+
+    /**
+     * Promise.any is fulfilled with the first element to be fulfilled.
+     * 
+     * Once fulfilled, the other promises are cancelled.
+     * 
+     * If all of the elements are rejected, Promise.any is rejected with
+     * {@link PromiseAggregateException} that holds all the reasons.
+     * 
+     * @param promises
+     * @return
+     */
+    public static Promise any(Thennable... promises) {
+        return any((PromiseScheduler) null, promises);
+    }
+
+    public static Promise any(PromiseScheduler scheduler, Thennable... promises) {
+        if (promises == null || promises.length == 0) {
+            return Promise.reject(new PromiseAggregateException(new ArrayList<Object>()));
+        }
+        return combine(Combination.ANY, scheduler, promises);
+    }
+
+    public static Promise any(Func... funcs) {
+        return any((PromiseScheduler) null, funcs);
+    }
+
+    public static Promise any(PromiseScheduler scheduler, Func... funcs) {
+        if (funcs == null || funcs.length == 0) {
+            return Promise.reject(new PromiseAggregateException(new ArrayList<Object>()));
+        }
+        return any(scheduler, toPromises(funcs));
+    }
+
+    /**
+     * Promise.allSettled waits for all the elements to be settled and
+     * is always fulfilled.
+     * 
+     * The outcomes are returned as "List<SettledResult>" in the order of the
+     * arguments.
+     * 
+     * @param promises
+     * @return
+     */
+    public static Promise allSettled(Thennable... promises) {
+        return allSettled((PromiseScheduler) null, promises);
+    }
+
+    public static Promise allSettled(PromiseScheduler scheduler, Thennable... promises) {
         if (promises == null || promises.length == 0) {
-            // If an empty iterable is passed, then this method returns an
-            // already resolved promise.
             return Promise.resolve();
         }
+        return combine(Combination.ALL_SETTLED, scheduler, promises);
+    }
+
+    public static Promise allSettled(Func... funcs) {
+        return allSettled((PromiseScheduler) null, funcs);
+    }
+
+    public static Promise allSettled(PromiseScheduler scheduler, Func... funcs) {
+        if (funcs == null || funcs.length == 0) {
+            final Object data = null;
+            return Promise.resolveOn(data, scheduler);
+        }
+        return allSettled(scheduler, toPromises(funcs));
+    }
+
+    private static Promise[] toPromises(Func[] funcs) {
+        final Promise[] promises = new Promise[funcs.length];
+        for (int i = 0; i < funcs.length; i++) {
+            if (funcs[i] != null) {
+                promises[i] = new Promise(funcs[i]);
+            }
+        }
+        return promises;
+    }
+
+    /**
+     * Run all the promises at the same time, each on its own chain with its own cancellation token.
+     */
+    private static Promise combine(final Combination combination, final PromiseScheduler scheduler, final Thennable[] promises) {
+
+        final PromiseScheduler _scheduler;
 
-        final List<Object> resultList = new ArrayList<Object>();
-        final List<Holder> resultHolderList = new ArrayList<Holder>();
+        if (scheduler == null) {
+            _scheduler = PromiseScheduler.getDefault();
+        } else {
+            _scheduler = scheduler;
+        }
 
         // build workers(=children of Promise.all) promise name
         final StringBuilder sbWorkersPromise = new StringBuilder();
@@ -553,138 +1453,549 @@ public class Promise implements Thennable {
             @Override
             public void run(Action _action, Object data) throws Exception {
 
-                final CountDownLatch latch = new CountDownLatch(promises.length);
+                // No thread waits for the children.
+                // The child that decides the outcome settles the combined promise.
+                final Combiner combiner = new Combiner(combination, _action, promises.length);
 
-                final Holder rejectedHolder = new Holder();
+                if (Metrics.isEnabled()) {
+                    Metrics.recordFanOut(combination.mLabel, promises.length);
+                }
 
-                for (Thennable _promise : promises) {
+                // Cancelling the chain of the combined promise also cancels the children
+                combiner.listenTo(_action.getCancellationToken());
 
-                    final Promise srcPromise = (Promise) _promise;
+                for (int i = 0; i < promises.length; i++) {
 
-                    LOGGER.fine(TAG + " " + "Promise.all add promise=" + srcPromise.getName());
+                    final int index = i;
+                    final Promise srcPromise = (Promise) promises[i];
 
-                    final Holder resultHolder = new Holder();
-                    resultHolderList.add(resultHolder);
+                    if (Tracing.isEnabled()) {
+                        srcPromise.trace(PromiseTracer.Phase.ALL, _scheduler);
+                    }
 
-                    final Promise workerPromise = new Promise(srcPromise.getName() + ".Starter", _executor);
+                    final Promise workerPromise = new Promise(srcPromise.getName() + ".Starter", _scheduler);
                     workerPromise.mStatus = Status.FULFILLED;
+                    workerPromise.mCancellationToken = combiner.mTokens[index];
 
                     workerPromise.then(srcPromise).then(
                             // fulfilled
                             new Promise(
-                                    "Promise.all [FULFILLED promise of " + srcPromise.getName() + "]",
+                                    combination.mLabel + " [FULFILLED promise of " + srcPromise.getName() + "]",
                                     new Func() {
                                         @Override
                                         public void run(Action action, Object data) throws Exception {
-                                            resultHolder.result = data;
                                             action.resolve();
-                                            LOGGER.fine(TAG + " " + "Promise.all " + srcPromise.getName() + " FULFILLED on " + Thread.currentThread());
-                                            latch.countDown();
+                                            combiner.onSettled(index, Status.FULFILLED, data);
                                         }
                                     }),
                             // rejected
                             new Promise(
-                                    "Promise.all [REJECTED promise of " + srcPromise.getName() + "]",
+                                    combination.mLabel + " [REJECTED promise of " + srcPromise.getName() + "]",
                                     new Func() {
                                         @Override
                                         public void run(Action action, Object data) throws Exception {
-                                            rejectedHolder.rejected = true;
-                                            rejectedHolder.result = data;
-                                            resultHolder.result = data;
                                             action.resolve();
-
-                                            LOGGER.fine(TAG + " " + "Promise.all " + srcPromise.getName() + " REJECTED on " + Thread.currentThread());
-
-                                            // Countdown latches to cancel to move forward even if there is something else thread running
-                                            for (int i = 0; i < promises.length; i++) {
-                                                latch.countDown();
-                                            }
+                                            combiner.onSettled(index, Status.REJECTED, data);
                                         }
                                     }))
                             .start();
                 }
+            }
+        };// end of func
 
-                latch.await();
+        final Promise workersPromise = new Promise(nameOfWorkersPromise, funcWorkers);
 
-                if (executor == null) {
-                    // automatically shutdown on Promise.all
-                    _executor.shutdown();
-                } else {
-                    // The user needs to shutdown the executor
+        final Promise starterOfWorkersPromise = new Promise(nameOfWorkersPromise + ".Starter", _scheduler);
+        starterOfWorkersPromise.mStatus = Status.FULFILLED;
+
+        return starterOfWorkersPromise.then(workersPromise);
+    }
+
+    /**
+     * Pulls the funcs one by one while the number of the running funcs is less than the concurrency.
+     */
+    private static final class LimitedCombiner {
+
+        private final PromiseScheduler mScheduler;
+        private final int mConcurrency;
+        private final Iterator<? extends Func> mIterator;
+        private final Action mAction;
+
+        // Guarded by this
+        private final List<Object> mResults = new ArrayList<Object>();
+        private final Set<CancellationToken> mRunningTokens = new HashSet<CancellationToken>();
+        private int mActive = 0;
+        private boolean mExhausted = false;
+        private boolean mSettled = false;
+
+        private CancellationToken mParentToken;
+        private Runnable mParentListener;
+
+        LimitedCombiner(PromiseScheduler scheduler, int concurrency, Iterator<? extends Func> iterator, Action action) {
+            mScheduler = scheduler;
+            mConcurrency = concurrency;
+            mIterator = iterator;
+            mAction = action;
+        }
+
+        void start() {
+            // Cancelling the chain of Promise.allLimited also cancels the running funcs
+            final CancellationToken parentToken = mAction.getCancellationToken();
+            if (parentToken != null) {
+                mParentToken = parentToken;
+                mParentListener = new Runnable() {
+                    @Override
+                    public void run() {
+                        reject(parentToken.getReason());
+                    }
+                };
+                if (!parentToken.addListener(mParentListener)) {
+                    reject(parentToken.getReason());
+                    return;
                 }
+            }
+            launch(mConcurrency);
+        }
 
-                final boolean isRejected = rejectedHolder.rejected;
-                final Object rejectedResultObject = rejectedHolder.result;
+        /**
+         * Pull and run the funcs up to the count
+         */
+        private void launch(int count) {
+            for (int i = 0; i < count; i++) {
+                int index = -1;
+                Func func = null;
+                CancellationToken cancellationToken = null;
+                RuntimeException failure = null;
+
+                synchronized (this) {
+                    if (mSettled || mExhausted) {
+                        break;
+                    }
+                    try {
+                        if (!mIterator.hasNext()) {
+                            mExhausted = true;
+                            break;
+                        }
+                        func = mIterator.next();
+                        if (func == null) {
+                            failure = new NullPointerException("Func of Promise.allLimited must not be null. index=" + mResults.size());
+                        }
+                    } catch (RuntimeException e) {
+                        failure = e;
+                    }
 
-                for (Holder holder : resultHolderList) {
-                    resultList.add(holder.result);
+                    if (failure != null) {
+                        mExhausted = true;
+                    } else {
+                        index = mResults.size();
+                        mResults.add(null);
+                        mActive++;
+                        cancellationToken = new CancellationToken();
+                        mRunningTokens.add(cancellationToken);
+                    }
                 }
 
-                if (isRejected) {
-                    _action.reject(rejectedResultObject);
-                } else {
-                    _action.resolve(resultList);
+                if (failure != null) {
+                    reject(failure);
+                    return;
                 }
+                run(index, func, cancellationToken);
             }
-        };// end of func
+            resolveIfDone();
+        }
 
-        final Promise workersPromise = new Promise(nameOfWorkersPromise, funcWorkers);
+        private void run(final int index, Func func, final CancellationToken cancellationToken) {
+
+            final Promise workerPromise = new Promise("Promise.allLimited.Starter", mScheduler);
+            workerPromise.mStatus = Status.FULFILLED;
+            workerPromise.mCancellationToken = cancellationToken;
+
+            workerPromise.then(new Promise(func)).then(
+                    // fulfilled
+                    new Promise("Promise.allLimited [FULFILLED]", new Func() {
+                        @Override
+                        public void run(Action action, Object data) throws Exception {
+                            action.resolve();
+                            synchronized (LimitedCombiner.this) {
+                                if (mSettled) {
+                                    return;
+                                }
+                                mResults.set(index, data);
+                                mActive--;
+                                mRunningTokens.remove(cancellationToken);
+                            }
+                            // A slot is freed, so pull the next one
+                            launch(1);
+                        }
+                    }),
+                    // rejected
+                    new Promise("Promise.allLimited [REJECTED]", new Func() {
+                        @Override
+                        public void run(Action action, Object data) throws Exception {
+                            action.resolve();
+                            reject(data);
+                        }
+                    }))
+                    .start();
+        }
 
-        final Promise starterOfWorkersPromise = new Promise(nameOfWorkersPromise + ".Starter", _executor);
-        starterOfWorkersPromise.mStatus = Status.FULFILLED;
+        private void resolveIfDone() {
+            final List<Object> results;
+            synchronized (this) {
+                if (mSettled || !mExhausted || mActive > 0) {
+                    return;
+                }
+                mSettled = true;
+                results = mResults;
+            }
+            if (Metrics.isEnabled()) {
+                Metrics.recordFanOut("Promise.allLimited", results.size());
+            }
+            removeParentListener();
+            mAction.resolve(results);
+        }
 
-        return starterOfWorkersPromise.then(workersPromise);
+        private void reject(Object reason) {
+            final List<CancellationToken> runningTokens;
+            synchronized (this) {
+                if (mSettled) {
+                    return;
+                }
+                mSettled = true;
+                runningTokens = new ArrayList<CancellationToken>(mRunningTokens);
+                mRunningTokens.clear();
+            }
+            removeParentListener();
+
+            // Stop the funcs still running instead of letting them hold worker threads
+            final CancellationException cancellationReason = new CancellationException("Promise.allLimited is already settled");
+            for (CancellationToken cancellationToken : runningTokens) {
+                cancellationToken.cancel(cancellationReason);
+            }
+            mAction.reject(reason);
+        }
+
+        private void removeParentListener() {
+            if (mParentToken != null) {
+                mParentToken.removeListener(mParentListener);
+            }
+        }
     }
 
     /**
-     * Promise.all waits for all fulfillments (or the first rejection).
-     * 
-     * Promise.all is rejected if any of the elements are rejected.
-     * For example,
-     * if you pass in four funcs that resolve after a sleep and one func
-     * that rejects immediately, then Promise.all will reject immediately.
-     * 
-     * Since each func is executed on its own worker thread, the
-     * execution of the func itself continues on the worker thread.
-     * But, once reject received, Promise.all will move on to then when it receives
-     * reject even if the worker thread is moving
-     * 
-     * If fulfilled, all results are returned as "List<Object>" at
-     * {@link Func#run(Action, List<Object>)} method.
-     * 
-     * If rejected, only rejected func results will be returned as "Error" at
-     * {@link Func#run(Action, Error)} method.
-     * 
-     * @param funcs
-     * @return
-     * 
+     * Runs the attempts of Promise.retry, waiting for the backoff on the timer instead of a thread.
      */
+    private static final class Retrier {
+
+        private final PromiseScheduler mScheduler;
+        private final Func mFunc;
+        private final RetryPolicy mPolicy;
+        private final Action mAction;
+        private final Object mData;
+        private final long mStartTime = System.nanoTime();
+
+        // Guarded by this
+        private final List<Object> mReasons = new ArrayList<Object>();
+        private boolean mSettled;
+        private CancellationToken mAttemptToken;
+        private PromiseTimer.Timeout mBackoff;
+
+        private CancellationToken mParentToken;
+        private Runnable mParentListener;
+
+        Retrier(PromiseScheduler scheduler, Func func, RetryPolicy policy, Action action, Object data) {
+            mScheduler = scheduler;
+            mFunc = func;
+            mPolicy = policy;
+            mAction = action;
+            mData = data;
+        }
 
-    public static Promise all(Func... funcs) {
-        return all(null, funcs);
+        void start() {
+            // Cancelling the chain of Promise.retry stops the attempt and the backoff
+            final CancellationToken parentToken = mAction.getCancellationToken();
+            if (parentToken != null) {
+                mParentToken = parentToken;
+                mParentListener = new Runnable() {
+                    @Override
+                    public void run() {
+                        settle(Status.REJECTED, parentToken.getReason());
+                    }
+                };
+                if (!parentToken.addListener(mParentListener)) {
+                    settle(Status.REJECTED, parentToken.getReason());
+                    return;
+                }
+            }
+            attempt();
+        }
+
+        private void attempt() {
+
+            final CancellationToken cancellationToken = new CancellationToken();
+
+            synchronized (this) {
+                if (mSettled) {
+                    return;
+                }
+                mAttemptToken = cancellationToken;
+                mBackoff = null;
+            }
+
+            final Promise workerPromise = new Promise("Promise.retry.Starter", mScheduler);
+            workerPromise.mStatus = Status.FULFILLED;
+            workerPromise.mResult = mData;
+            workerPromise.mCancellationToken = cancellationToken;
+
+            workerPromise.then(new Promise(mFunc)).then(
+                    // fulfilled
+                    new Promise("Promise.retry [FULFILLED]", new Func() {
+                        @Override
+                        public void run(Action action, Object data) throws Exception {
+                            action.resolve();
+                            settle(Status.FULFILLED, data);
+                        }
+                    }),
+                    // rejected
+                    new Promise("Promise.retry [REJECTED]", new Func() {
+                        @Override
+                        public void run(Action action, Object data) throws Exception {
+                            action.resolve();
+                            onRejected(data);
+                        }
+                    }))
+                    .start();
+        }
+
+        private void onRejected(Object reason) {
+
+            final String giveUpMessage;
+            final List<Object> reasons;
+
+            synchronized (this) {
+                if (mSettled) {
+                    return;
+                }
+                mReasons.add(reason);
+                reasons = new ArrayList<Object>(mReasons);
+
+                final int attempts = mReasons.size();
+                final long delayMillis = mPolicy.getDelayMillis(attempts);
+                final long maxDurationNanos = mPolicy.getMaxDurationNanos();
+
+                if (!mPolicy.isRetryable(reason)) {
+                    giveUpMessage = "Promise.retry gave up on a non-retryable reason after " + attempts + " attempt(s)";
+                } else if (attempts >= mPolicy.getMaxAttempts()) {
+                    giveUpMessage = "Promise.retry gave up after " + attempts + " attempt(s)";
+                } else if (maxDurationNanos > 0
+                        && System.nanoTime() - mStartTime + TimeUnit.MILLISECONDS.toNanos(delayMillis) > maxDurationNanos) {
+                    giveUpMessage = "Promise.retry ran out of time after " + attempts + " attempt(s)";
+                } else {
+                    giveUpMessage = null;
+                    // No thread is held while waiting for the next attempt
+                    mBackoff = PromiseTimer.getInstance().schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            attempt();
+                        }
+                    }, delayMillis);
+                }
+            }
+
+            if (giveUpMessage != null) {
+                settle(Status.REJECTED, new PromiseRetryException(giveUpMessage, reasons));
+            }
+        }
+
+        private void settle(Status status, Object value) {
+
+            final CancellationToken attemptToken;
+            final PromiseTimer.Timeout backoff;
+
+            synchronized (this) {
+                if (mSettled) {
+                    return;
+                }
+                mSettled = true;
+                attemptToken = mAttemptToken;
+                backoff = mBackoff;
+            }
+
+            if (mParentToken != null) {
+                mParentToken.removeListener(mParentListener);
+            }
+            if (backoff != null) {
+                backoff.cancel();
+            }
+            if (attemptToken != null && status == Status.REJECTED) {
+                // Stop the attempt in flight when cancelled(no effect if it is already settled)
+                attemptToken.cancel(value);
+            }
+
+            if (status == Status.FULFILLED) {
+                mAction.resolve(value);
+            } else {
+                mAction.reject(value);
+            }
+        }
     }
 
-    public static Promise all(ExecutorService executor, Func... funcs) {
-        if (funcs == null || funcs.length == 0) {
-            final Object data = null;
-            return Promise.resolve(data, executor);
+    private enum Combination {
+        ALL("Promise.all"), RACE("Promise.race"), ANY("Promise.any"), ALL_SETTLED("Promise.allSettled");
+
+        private final String mLabel;
+
+        Combination(String label) {
+            mLabel = label;
+        }
+    }
+
+    /**
+     * Collects the outcomes of the children and settles the combined promise exactly once.
+     */
+    private static final class Combiner {
+
+        private final Combination mCombination;
+        private final Action mAction;
+        private final Object[] mResults;
+        private final CancellationToken[] mTokens;
+        private final AtomicInteger mRemainingCounter;
+        private final AtomicBoolean mSettled = new AtomicBoolean(false);
+
+        private CancellationToken mParentToken;
+        private Runnable mParentListener;
+
+        Combiner(Combination combination, Action action, int size) {
+            mCombination = combination;
+            mAction = action;
+            mResults = new Object[size];
+            mTokens = new CancellationToken[size];
+            for (int i = 0; i < size; i++) {
+                mTokens[i] = new CancellationToken();
+            }
+            mRemainingCounter = new AtomicInteger(size);
         }
 
-        final List<Promise> promiseList = new ArrayList<Promise>();
-        if (funcs != null) {
+        void listenTo(final CancellationToken parentToken) {
+            if (parentToken == null) {
+                return;
+            }
+            mParentToken = parentToken;
+            mParentListener = new Runnable() {
+                @Override
+                public void run() {
+                    cancelChildren(-1, parentToken.getReason());
+                }
+            };
+            if (!parentToken.addListener(mParentListener)) {
+                cancelChildren(-1, parentToken.getReason());
+            }
+        }
+
+        void onSettled(int index, Status status, Object value) {
 
-            for (Func func : funcs) {
-                final Promise promise;
-                if (func == null) {
-                    promise = null;
+            // The counter publishes the results written by the other children
+            switch (mCombination) {
+            case ALL:
+                if (status == Status.FULFILLED) {
+                    mResults[index] = value;
+                    if (mRemainingCounter.decrementAndGet() == 0) {
+                        settle(index, Status.FULFILLED, resultList());
+                    }
+                } else {
+                    // Move forward with the first rejection
+                    settle(index, Status.REJECTED, value);
+                }
+                break;
+            case RACE:
+                settle(index, status, value);
+                break;
+            case ANY:
+                if (status == Status.FULFILLED) {
+                    settle(index, Status.FULFILLED, value);
                 } else {
-                    promise = new Promise(func);
+                    mResults[index] = value;
+                    if (mRemainingCounter.decrementAndGet() == 0) {
+                        settle(index, Status.REJECTED, new PromiseAggregateException(resultList()));
+                    }
+                }
+                break;
+            case ALL_SETTLED:
+                mResults[index] = new SettledResult(status, value);
+                if (mRemainingCounter.decrementAndGet() == 0) {
+                    settle(index, Status.FULFILLED, resultList());
                 }
+                break;
+            default:
+                break;
+            }
+        }
 
-                promiseList.add(promise);
+        private void cancelChildren(int exceptIndex, Object reason) {
+            for (int i = 0; i < mTokens.length; i++) {
+                if (i != exceptIndex) {
+                    mTokens[i].cancel(reason);
+                }
             }
         }
-        return Promise.all(executor, promiseList.toArray(new Promise[0]));
+
+        private List<Object> resultList() {
+            return new ArrayList<Object>(Arrays.asList(mResults));
+        }
+
+        private void settle(int index, Status status, Object value) {
+            if (!mSettled.compareAndSet(false, true)) {
+                return;
+            }
+
+            if (mParentToken != null) {
+                mParentToken.removeListener(mParentListener);
+            }
+
+            // The outcome is decided, so stop the other children instead of letting them hold worker threads
+            cancelChildren(index, new CancellationException(mCombination.mLabel + " is already settled"));
+
+            if (status == Status.FULFILLED) {
+                mAction.resolve(value);
+            } else {
+                mAction.reject(value);
+            }
+        }
+    }
+
+    /**
+     * Promise.allLong runs all the LongPromise chains at the same time and
+     * collects the values into long[] in the order of the arguments without boxing.
+     * 
+     * Rejected with the first rejection reason if any of the chains are rejected.
+     * 
+     * @param promises
+     * @return
+     */
+    public static TypedPromise<long[]> allLong(LongPromise... promises) {
+        return TypedAll.all(null, promises, new long[promises == null ? 0 : promises.length]);
+    }
+
+    /**
+     * Promise.allInt runs all the IntPromise chains at the same time and
+     * collects the values into int[] in the order of the arguments without boxing.
+     * 
+     * @param promises
+     * @return
+     */
+    public static TypedPromise<int[]> allInt(IntPromise... promises) {
+        return TypedAll.all(null, promises, new int[promises == null ? 0 : promises.length]);
+    }
+
+    /**
+     * Promise.allDouble runs all the DoublePromise chains at the same time and
+     * collects the values into double[] in the order of the arguments without boxing.
+     * 
+     * @param promises
+     * @return
+     */
+    public static TypedPromise<double[]> allDouble(DoublePromise... promises) {
+        return TypedAll.all(null, promises, new double[promises == null ? 0 : promises.length]);
     }
 
     public static void sleep(long millis) {
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2018-2019 Tom Misawa(riversun.org@gmail.com)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.promise;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PromiseBatcher collects the keys loaded by many independent chains and
+ * fetches them with a single batch func.
+ * 
+ * Each {@link #load(Object)} returns a Promise that is settled from the result of the batch.
+ * The keys are collected until the batch has maxBatchSize keys or windowMillis has passed
+ * since the first key of the batch, whichever comes first.
+ * The same key loaded twice in a batch is fetched only once.
+ * 
+ * The batch func receives the distinct keys as "List<K>" in the order of loading and resolves with either
+ * "List<V>" of the same size and order, or "Map<K,V>"(keys missing in the map are resolved with null).
+ * If the batch func rejects, all the promises of the batch are rejected with the reason.
+ * 
+ * <pre>
+ * PromiseBatcher&lt;Long, User&gt; batcher = new PromiseBatcher&lt;Long, User&gt;((action, data) -&gt; {
+ *     List&lt;Long&gt; ids = (List&lt;Long&gt;) data;
+ *     action.resolve(userRepository.findAllById(ids));
+ * });
+ * 
+ * batcher.load(1L).then((action, data) -&gt; {
+ *     User user = (User) data;
+ *     action.resolve();
+ * }).start();
+ * </pre>
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+public final class PromiseBatcher<K, V> {
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+    private final Func mBatchFunc;
+    private final int mMaxBatchSize;
+    private final long mWindowMillis;
+    private final PromiseScheduler mScheduler;
+
+    // Guarded by this
+    private Batch<K> mCurrentBatch;
+
+    /**
+     * Create a batcher that dispatches on the next tick of the timer
+     * 
+     * @param batchFunc
+     */
+    public PromiseBatcher(Func batchFunc) {
+        this(batchFunc, DEFAULT_MAX_BATCH_SIZE, 0);
+    }
+
+    public PromiseBatcher(Func batchFunc, int maxBatchSize, long windowMillis) {
+        this(batchFunc, maxBatchSize, windowMillis, null);
+    }
+
+    public PromiseBatcher(Func batchFunc, int maxBatchSize, long windowMillis, PromiseScheduler scheduler) {
+        if (batchFunc == null) {
+            throw new NullPointerException("batchFunc must not be null");
+        }
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be greater than 0 but was " + maxBatchSize);
+        }
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("windowMillis must not be negative but was " + windowMillis);
+        }
+        mBatchFunc = batchFunc;
+        mMaxBatchSize = maxBatchSize;
+        mWindowMillis = windowMillis;
+        mScheduler = scheduler;
+    }
+
+    /**
+     * Returns a promise that is settled with the value for the key when the batch is fetched.
+     * 
+     * @param key
+     * @return
+     */
+    public Promise load(final K key) {
+
+        final SharedResult entry;
+        Batch<K> fullBatch = null;
+
+        synchronized (this) {
+            if (mCurrentBatch == null) {
+                mCurrentBatch = new Batch<K>();
+                final Batch<K> batch = mCurrentBatch;
+                mCurrentBatch.mTimeout = PromiseTimer.getInstance().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        dispatch(batch);
+                    }
+                }, mWindowMillis);
+            }
+
+            SharedResult existing = mCurrentBatch.mEntries.get(key);
+            if (existing == null) {
+                existing = new SharedResult();
+                mCurrentBatch.mEntries.put(key, existing);
+            }
+            entry = existing;
+
+            if (mCurrentBatch.mEntries.size() >= mMaxBatchSize) {
+                fullBatch = mCurrentBatch;
+                mCurrentBatch = null;
+            }
+        }
+
+        if (fullBatch != null) {
+            fullBatch.mTimeout.cancel();
+            fetch(fullBatch);
+        }
+
+        return entry.toPromise("PromiseBatcher.load(" + key + ")", mScheduler);
+    }
+
+    /**
+     * Dispatch the keys collected so far without waiting for the window
+     */
+    public void dispatch() {
+        final Batch<K> batch;
+        synchronized (this) {
+            batch = mCurrentBatch;
+        }
+        if (batch != null) {
+            batch.mTimeout.cancel();
+            dispatch(batch);
+        }
+    }
+
+    private void dispatch(Batch<K> batch) {
+        synchronized (this) {
+            if (mCurrentBatch != batch) {
+                // Already dispatched
+                return;
+            }
+            mCurrentBatch = null;
+        }
+        fetch(batch);
+    }
+
+    private void fetch(final Batch<K> batch) {
+
+        // The entries are not modified after the batch is detached
+        final List<K> keys = Collections.unmodifiableList(new ArrayList<K>(batch.mEntries.keySet()));
+
+        Promise.resolveOn(keys, mScheduler)
+                .then(mBatchFunc)
+                .then(new Func() {
+                    @Override
+                    public void run(Action action, Object data) throws Exception {
+                        action.resolve();
+                        try {
+                            distribute(batch, keys, data);
+                        } catch (RuntimeException e) {
+                            // Reject the entries left pending, the ones already settled are not changed
+                            batch.rejectAll(e);
+                        }
+                    }
+                }, new Func() {
+                    @Override
+                    public void run(Action action, Object data) throws Exception {
+                        action.resolve();
+                        batch.rejectAll(data);
+                    }
+                })
+                .start();
+    }
+
+    private void distribute(Batch<K> batch, List<K> keys, Object data) {
+        if (data instanceof Map) {
+            final Map<?, ?> values = (Map<?, ?>) data;
+            for (Map.Entry<K, SharedResult> e : batch.mEntries.entrySet()) {
+                e.getValue().settle(Status.FULFILLED, values.get(e.getKey()));
+            }
+        } else if (data instanceof List && ((List<?>) data).size() == keys.size()) {
+            final List<?> values = (List<?>) data;
+            for (int i = 0; i < keys.size(); i++) {
+                batch.mEntries.get(keys.get(i)).settle(Status.FULFILLED, values.get(i));
+            }
+        } else {
+            batch.rejectAll(new IllegalStateException(
+                    "The batch func must resolve with a List of " + keys.size() + " values or a Map but was " + data));
+        }
+    }
+
+    private static final class Batch<K> {
+
+        private final Map<K, SharedResult> mEntries = new LinkedHashMap<K, SharedResult>();
+        private PromiseTimer.Timeout mTimeout;
+
+        void rejectAll(Object reason) {
+            for (SharedResult entry : mEntries.values()) {
+                entry.settle(Status.REJECTED, reason);
+            }
+        }
+    }
+}
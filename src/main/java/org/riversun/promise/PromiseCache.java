@@ -0,0 +1,531 @@
+/*
+ * Copyright (c) 2018-2019 Tom Misawa(riversun.org@gmail.com)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.promise;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * PromiseCache caches the results of an expensive loader func by key.
+ * 
+ * Concurrent requesters of the same key share a single load(single-flight).
+ * Rejected loads are not cached, so the next request loads again.
+ * 
+ * The entries are evicted by segmented LRU when the cache has more than maximumSize entries.
+ * An entry accessed twice moves from the probation segment to the protected segment,
+ * so a scan of one-time keys does not flush the frequently used ones.
+ * 
+ * A hit reads the map without a lock.
+ * The access is recorded in a lossy buffer that is replayed to the LRU by the next writer.
+ * 
+ * <pre>
+ * PromiseCache&lt;String&gt; cache = new PromiseCache&lt;String&gt;((action, data) -&gt; {
+ *     String url = (String) data;
+ *     action.resolve(download(url));
+ * }).maximumSize(1000).expireAfterWrite(60000);
+ * 
+ * cache.get("https://example.com").then((action, data) -&gt; {
+ *     action.resolve();
+ * }).start();
+ * </pre>
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+public final class PromiseCache<K> {
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+
+    private static final int READ_BUFFER_SIZE = 128;
+    private static final int READ_BUFFER_DRAIN_THRESHOLD = 32;
+
+    // Share of maximumSize for the protected segment
+    private static final int PROTECTED_PERCENTAGE = 80;
+
+    private final Func mLoader;
+    private final ConcurrentHashMap<K, Node<K>> mMap = new ConcurrentHashMap<K, Node<K>>();
+
+    private volatile long mMaximumSize = DEFAULT_MAXIMUM_SIZE;
+    private volatile long mExpireAfterWriteNanos = 0;
+    private volatile long mRefreshAfterWriteNanos = 0;
+    private volatile PromiseScheduler mScheduler;
+
+    // Accesses waiting to be replayed to the LRU
+    private final Queue<Node<K>> mReadBuffer = new ConcurrentLinkedQueue<Node<K>>();
+    private final AtomicInteger mReadBufferCount = new AtomicInteger();
+
+    // The eviction policy is guarded by this lock
+    private final ReentrantLock mEvictionLock = new ReentrantLock();
+    private final Segment<K> mProbation = new Segment<K>();
+    private final Segment<K> mProtected = new Segment<K>();
+
+    private final LongAdder mHitCount = new LongAdder();
+    private final LongAdder mMissCount = new LongAdder();
+    private final LongAdder mLoadSuccessCount = new LongAdder();
+    private final LongAdder mLoadFailureCount = new LongAdder();
+    private final LongAdder mTotalLoadTimeNanos = new LongAdder();
+    private final LongAdder mEvictionCount = new LongAdder();
+
+    /**
+     * Create a cache with the loader func.
+     * The loader receives the key as data and resolves with the value.
+     * 
+     * @param loader
+     */
+    public PromiseCache(Func loader) {
+        if (loader == null) {
+            throw new NullPointerException("loader must not be null");
+        }
+        mLoader = loader;
+    }
+
+    /**
+     * Set the maximum number of entries
+     * 
+     * @param maximumSize
+     * @return
+     */
+    public PromiseCache<K> maximumSize(long maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be greater than 0 but was " + maximumSize);
+        }
+        mMaximumSize = maximumSize;
+        return this;
+    }
+
+    /**
+     * Expire the entries when the time has passed since loaded
+     * 
+     * @param timeoutMillis
+     * @return
+     */
+    public PromiseCache<K> expireAfterWrite(long timeoutMillis) {
+        mExpireAfterWriteNanos = toNanos(timeoutMillis);
+        return this;
+    }
+
+    /**
+     * Reload the entries in the background when requested after the time has passed since loaded.
+     * The current value is returned until the reload is fulfilled.
+     * 
+     * @param timeoutMillis
+     * @return
+     */
+    public PromiseCache<K> refreshAfterWrite(long timeoutMillis) {
+        mRefreshAfterWriteNanos = toNanos(timeoutMillis);
+        return this;
+    }
+
+    /**
+     * Set the scheduler for the loader and the returned promises
+     * 
+     * @param scheduler
+     * @return
+     */
+    public PromiseCache<K> scheduler(PromiseScheduler scheduler) {
+        mScheduler = scheduler;
+        return this;
+    }
+
+    private static long toNanos(long timeoutMillis) {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("timeoutMillis must not be negative but was " + timeoutMillis);
+        }
+        return TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /**
+     * Returns a promise that is settled with the value for the key.
+     * The value is loaded if not cached.
+     * 
+     * @param key
+     * @return
+     */
+    public Promise get(final K key) {
+
+        for (;;) {
+            final Node<K> node = mMap.get(key);
+
+            if (node == null) {
+                final Node<K> newNode = new Node<K>(key);
+                final Node<K> existing = mMap.putIfAbsent(key, newNode);
+                if (existing != null) {
+                    // Another requester started the load
+                    continue;
+                }
+                mMissCount.increment();
+                onWrite(newNode);
+                load(newNode, false);
+                return newNode.mResult.toPromise("PromiseCache.get(" + key + ")", mScheduler);
+            }
+
+            if (node.mResult.getStatus() != Status.FULFILLED) {
+                // Wait for the load in flight
+                mMissCount.increment();
+                return node.mResult.toPromise("PromiseCache.get(" + key + ")", mScheduler);
+            }
+
+            final long age = System.nanoTime() - node.mWriteTime;
+
+            if (mExpireAfterWriteNanos > 0 && age >= mExpireAfterWriteNanos) {
+                if (mMap.remove(key, node)) {
+                    onRemove(node);
+                }
+                continue;
+            }
+
+            mHitCount.increment();
+            recordAccess(node);
+
+            if (mRefreshAfterWriteNanos > 0 && age >= mRefreshAfterWriteNanos
+                    && node.mRefreshing.compareAndSet(false, true)) {
+                load(new Node<K>(key), true);
+            }
+
+            return Promise.resolveOn(node.mResult.getValue(), mScheduler);
+        }
+    }
+
+    /**
+     * Discard the entry of the key
+     * 
+     * @param key
+     */
+    public void invalidate(K key) {
+        final Node<K> node = mMap.remove(key);
+        if (node != null) {
+            onRemove(node);
+        }
+    }
+
+    /**
+     * Discard all the entries
+     */
+    public void invalidateAll() {
+        for (K key : mMap.keySet()) {
+            invalidate(key);
+        }
+    }
+
+    /**
+     * Returns the number of entries including the loads in flight
+     * 
+     * @return
+     */
+    public long size() {
+        return mMap.size();
+    }
+
+    /**
+     * Returns the snapshot of the statistics
+     * 
+     * @return
+     */
+    public Stats getStats() {
+        return new Stats(mHitCount.sum(), mMissCount.sum(), mLoadSuccessCount.sum(), mLoadFailureCount.sum(),
+                mTotalLoadTimeNanos.sum(), mEvictionCount.sum());
+    }
+
+    private void load(final Node<K> node, final boolean refresh) {
+
+        final long startTime = System.nanoTime();
+
+        Promise.resolveOn(node.mKey, mScheduler)
+                .then(mLoader)
+                .then(new Func() {
+                    @Override
+                    public void run(Action action, Object data) throws Exception {
+                        action.resolve();
+                        final long now = System.nanoTime();
+                        mLoadSuccessCount.increment();
+                        mTotalLoadTimeNanos.add(now - startTime);
+                        node.mWriteTime = now;
+                        node.mResult.settle(Status.FULFILLED, data);
+                        if (refresh) {
+                            onRefreshed(node);
+                        }
+                    }
+                }, new Func() {
+                    @Override
+                    public void run(Action action, Object data) throws Exception {
+                        action.resolve();
+                        mLoadFailureCount.increment();
+                        mTotalLoadTimeNanos.add(System.nanoTime() - startTime);
+                        if (refresh) {
+                            // Keep the current value and let the next request try again
+                            final Node<K> current = mMap.get(node.mKey);
+                            if (current != null) {
+                                current.mRefreshing.set(false);
+                            }
+                        } else if (mMap.remove(node.mKey, node)) {
+                            onRemove(node);
+                        }
+                        node.mResult.settle(Status.REJECTED, data);
+                    }
+                })
+                .start();
+    }
+
+    private void onRefreshed(Node<K> refreshed) {
+        mEvictionLock.lock();
+        try {
+            final Node<K> current = mMap.get(refreshed.mKey);
+            if (current == null || current.mSegment == null || !mMap.replace(refreshed.mKey, current, refreshed)) {
+                // Invalidated or evicted during the reload
+                return;
+            }
+            current.mSegment.replace(current, refreshed);
+        } finally {
+            mEvictionLock.unlock();
+        }
+    }
+
+    private void recordAccess(Node<K> node) {
+        if (mReadBufferCount.incrementAndGet() > READ_BUFFER_SIZE) {
+            // Dropping an access only makes the LRU less precise
+            mReadBufferCount.decrementAndGet();
+        } else {
+            mReadBuffer.offer(node);
+        }
+        if (mReadBufferCount.get() >= READ_BUFFER_DRAIN_THRESHOLD && mEvictionLock.tryLock()) {
+            try {
+                drainReadBuffer();
+            } finally {
+                mEvictionLock.unlock();
+            }
+        }
+    }
+
+    private void onWrite(Node<K> node) {
+        mEvictionLock.lock();
+        try {
+            drainReadBuffer();
+            if (mMap.get(node.mKey) != node) {
+                // Removed before it was added to the policy
+                return;
+            }
+            mProbation.addLast(node);
+            evict();
+        } finally {
+            mEvictionLock.unlock();
+        }
+    }
+
+    private void onRemove(Node<K> node) {
+        mEvictionLock.lock();
+        try {
+            if (node.mSegment != null) {
+                node.mSegment.remove(node);
+            }
+        } finally {
+            mEvictionLock.unlock();
+        }
+    }
+
+    private void drainReadBuffer() {
+        Node<K> node;
+        while ((node = mReadBuffer.poll()) != null) {
+            mReadBufferCount.decrementAndGet();
+            onAccess(node);
+        }
+    }
+
+    private void onAccess(Node<K> node) {
+        if (node.mSegment == mProtected) {
+            mProtected.moveToLast(node);
+        } else if (node.mSegment == mProbation) {
+            // Promote the entry accessed again and demote the least recently used protected entry
+            mProbation.remove(node);
+            mProtected.addLast(node);
+            final long maxProtected = Math.max(1, mMaximumSize * PROTECTED_PERCENTAGE / 100);
+            while (mProtected.mSize > maxProtected) {
+                final Node<K> demoted = mProtected.mHead;
+                mProtected.remove(demoted);
+                mProbation.addLast(demoted);
+            }
+        }
+        // Otherwise already removed from the policy
+    }
+
+    private void evict() {
+        while (mProbation.mSize + mProtected.mSize > mMaximumSize) {
+            final Node<K> victim = mProbation.mHead != null ? mProbation.mHead : mProtected.mHead;
+            victim.mSegment.remove(victim);
+            if (mMap.remove(victim.mKey, victim)) {
+                mEvictionCount.increment();
+            }
+        }
+    }
+
+    private static final class Node<K> {
+
+        private final K mKey;
+        private final SharedResult mResult = new SharedResult();
+        private final AtomicBoolean mRefreshing = new AtomicBoolean(false);
+        private volatile long mWriteTime;
+
+        // Guarded by the eviction lock
+        private Segment<K> mSegment;
+        private Node<K> mPrev;
+        private Node<K> mNext;
+
+        Node(K key) {
+            mKey = key;
+        }
+    }
+
+    /**
+     * Doubly linked list in the order of access, the head is the least recently used
+     */
+    private static final class Segment<K> {
+
+        private Node<K> mHead;
+        private Node<K> mTail;
+        private long mSize;
+
+        void addLast(Node<K> node) {
+            node.mSegment = this;
+            node.mPrev = mTail;
+            node.mNext = null;
+            if (mTail == null) {
+                mHead = node;
+            } else {
+                mTail.mNext = node;
+            }
+            mTail = node;
+            mSize++;
+        }
+
+        void remove(Node<K> node) {
+            if (node.mPrev == null) {
+                mHead = node.mNext;
+            } else {
+                node.mPrev.mNext = node.mNext;
+            }
+            if (node.mNext == null) {
+                mTail = node.mPrev;
+            } else {
+                node.mNext.mPrev = node.mPrev;
+            }
+            node.mSegment = null;
+            node.mPrev = null;
+            node.mNext = null;
+            mSize--;
+        }
+
+        void moveToLast(Node<K> node) {
+            if (node != mTail) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void replace(Node<K> oldNode, Node<K> newNode) {
+            newNode.mSegment = this;
+            newNode.mPrev = oldNode.mPrev;
+            newNode.mNext = oldNode.mNext;
+            if (oldNode.mPrev == null) {
+                mHead = newNode;
+            } else {
+                oldNode.mPrev.mNext = newNode;
+            }
+            if (oldNode.mNext == null) {
+                mTail = newNode;
+            } else {
+                oldNode.mNext.mPrev = newNode;
+            }
+            oldNode.mSegment = null;
+            oldNode.mPrev = null;
+            oldNode.mNext = null;
+        }
+    }
+
+    /**
+     * Statistics of PromiseCache
+     */
+    public static final class Stats {
+
+        private final long mHitCount;
+        private final long mMissCount;
+        private final long mLoadSuccessCount;
+        private final long mLoadFailureCount;
+        private final long mTotalLoadTimeNanos;
+        private final long mEvictionCount;
+
+        Stats(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount, long totalLoadTimeNanos,
+                long evictionCount) {
+            mHitCount = hitCount;
+            mMissCount = missCount;
+            mLoadSuccessCount = loadSuccessCount;
+            mLoadFailureCount = loadFailureCount;
+            mTotalLoadTimeNanos = totalLoadTimeNanos;
+            mEvictionCount = evictionCount;
+        }
+
+        public long getHitCount() {
+            return mHitCount;
+        }
+
+        public long getMissCount() {
+            return mMissCount;
+        }
+
+        public long getLoadSuccessCount() {
+            return mLoadSuccessCount;
+        }
+
+        public long getLoadFailureCount() {
+            return mLoadFailureCount;
+        }
+
+        public long getTotalLoadTimeNanos() {
+            return mTotalLoadTimeNanos;
+        }
+
+        public long getEvictionCount() {
+            return mEvictionCount;
+        }
+
+        public double getHitRate() {
+            final long requestCount = mHitCount + mMissCount;
+            return requestCount == 0 ? 1.0 : (double) mHitCount / requestCount;
+        }
+
+        public double getAverageLoadPenaltyNanos() {
+            final long loadCount = mLoadSuccessCount + mLoadFailureCount;
+            return loadCount == 0 ? 0.0 : (double) mTotalLoadTimeNanos / loadCount;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats [hitCount=" + mHitCount + ", missCount=" + mMissCount + ", loadSuccessCount=" + mLoadSuccessCount
+                    + ", loadFailureCount=" + mLoadFailureCount + ", totalLoadTimeNanos=" + mTotalLoadTimeNanos
+                    + ", evictionCount=" + mEvictionCount + "]";
+        }
+    }
+}
@@ -22,16 +22,55 @@
  */
 package org.riversun.promise;
 
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Exception that carries a rejection reason which is not a Throwable,
+ * for example when a rejected promise is converted to CompletableFuture.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
 @SuppressWarnings("serial")
 public class PromiseException extends Exception {
 
     private Object mValue;
 
     PromiseException(Object value) {
+        super(String.valueOf(value));
         mValue = value;
     }
 
-    Object getValue() {
+    /**
+     * Returns the rejection reason
+     * 
+     * @return
+     */
+    public Object getValue() {
         return mValue;
     }
+
+    /**
+     * Convert the rejection reason into Throwable to complete CompletableFuture exceptionally
+     */
+    static Throwable toThrowable(Object reason) {
+        if (reason instanceof Throwable) {
+            return (Throwable) reason;
+        }
+        return new PromiseException(reason);
+    }
+
+    /**
+     * Convert Throwable of CompletableFuture back into the rejection reason
+     */
+    static Object toReason(Throwable throwable) {
+        Throwable cause = throwable;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof PromiseException) {
+            return ((PromiseException) cause).getValue();
+        }
+        return cause;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,513 @@
+/*
+ * Copyright (c) 2018-2019 Tom Misawa(riversun.org@gmail.com)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.promise;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reactive Streams adapter of Promise with demand-driven backpressure.
+ * 
+ * - {@link #processor(Func, int)} applies a func to each item with limited concurrency.
+ * - {@link #publisher(int, Func...)} runs funcs like Promise.all and emits each result as it completes.
+ * 
+ * An item is requested from the upstream only when there is room for it,
+ * it means the number of the items running and the results not yet requested by the downstream is kept within the concurrency.
+ * So a slow func or a slow subscriber throttles the upstream, instead of growing the queue of the executor.
+ * 
+ * The interfaces have the same shape as java.util.concurrent.Flow(and org.reactivestreams),
+ * which is not available on Java 8, so they can be adapted to each other with a method reference.
+ * 
+ * Results are emitted in the order of completion.
+ * If a func is rejected, the stream is terminated with onError.
+ * The reason is passed as it is if it is a Throwable, or wrapped in PromiseException.
+ * Since null cannot be emitted, resolving with null also terminates the stream with NullPointerException.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+public final class PromiseFlow {
+
+    private PromiseFlow() {
+    }
+
+    /**
+     * Same as java.util.concurrent.Flow.Publisher
+     */
+    public interface Publisher<T> {
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * Same as java.util.concurrent.Flow.Subscriber
+     */
+    public interface Subscriber<T> {
+        void onSubscribe(Subscription subscription);
+
+        void onNext(T item);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    /**
+     * Same as java.util.concurrent.Flow.Subscription
+     */
+    public interface Subscription {
+        void request(long n);
+
+        void cancel();
+    }
+
+    /**
+     * Same as java.util.concurrent.Flow.Processor
+     */
+    public interface Processor<T, R> extends Subscriber<T>, Publisher<R> {
+    }
+
+    /**
+     * Returns the processor that runs the func for each item(the item is passed as "data" of the func)
+     * and emits the results as they complete.
+     * 
+     * @param func
+     * @param concurrency
+     *            maximum number of the items processed at the same time
+     * @return
+     */
+    public static Processor<Object, Object> processor(Func func, int concurrency) {
+        return processor(func, concurrency, null);
+    }
+
+    public static Processor<Object, Object> processor(Func func, int concurrency, PromiseScheduler scheduler) {
+        return new FuncProcessor(func, concurrency, scheduler);
+    }
+
+    /**
+     * Returns the publisher that runs the funcs like Promise.all and emits the results as they complete.
+     * 
+     * Each subscription runs the funcs again.
+     * 
+     * @param concurrency
+     *            maximum number of the funcs run at the same time
+     * @param funcs
+     * @return
+     */
+    public static Publisher<Object> publisher(final int concurrency, final Func... funcs) {
+        return publisher(concurrency, null, funcs);
+    }
+
+    public static Publisher<Object> publisher(final int concurrency, final PromiseScheduler scheduler, final Func... funcs) {
+        final Func runner = new Func() {
+            @Override
+            public void run(Action action, Object data) throws Exception {
+                ((Func) data).run(action, null);
+            }
+        };
+        final Publisher<Func> source = new IterablePublisher<Func>(Arrays.asList(funcs));
+
+        return new Publisher<Object>() {
+            @Override
+            public void subscribe(Subscriber<? super Object> subscriber) {
+                final Processor<Object, Object> processor = processor(runner, concurrency, scheduler);
+                processor.subscribe(subscriber);
+                source.subscribe(processor);
+            }
+        };
+    }
+
+    static long addCap(AtomicLong requested, long n) {
+        for (;;) {
+            final long current = requested.get();
+            if (current == Long.MAX_VALUE) {
+                return Long.MAX_VALUE;
+            }
+            long next = current + n;
+            if (next < 0) {
+                next = Long.MAX_VALUE;
+            }
+            if (requested.compareAndSet(current, next)) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * Processor running a promise chain for each item
+     */
+    private static final class FuncProcessor implements Processor<Object, Object>, Subscription {
+
+        private final Func mFunc;
+        private final int mConcurrency;
+        private final int mReplenishLimit;
+        private final PromiseScheduler mScheduler;
+
+        private final AtomicReference<Subscription> mUpstream = new AtomicReference<Subscription>();
+        private final AtomicReference<Subscriber<? super Object>> mDownstream = new AtomicReference<Subscriber<? super Object>>();
+        private final AtomicInteger mStartCount = new AtomicInteger();
+
+        private final Queue<Object> mResults = new ConcurrentLinkedQueue<Object>();
+        private final Set<CancellationToken> mRunningTokens = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger mActive = new AtomicInteger();
+        private final AtomicLong mRequested = new AtomicLong();
+        private final AtomicInteger mWip = new AtomicInteger();
+        private final AtomicReference<Throwable> mError = new AtomicReference<Throwable>();
+
+        private volatile boolean mUpstreamDone = false;
+        private volatile boolean mCancelled = false;
+
+        // Accessed only in the drain loop
+        private long mEmitted = 0;
+        private int mConsumed = 0;
+        private boolean mTerminated = false;
+
+        FuncProcessor(Func func, int concurrency, PromiseScheduler scheduler) {
+            if (concurrency < 1) {
+                throw new IllegalArgumentException("concurrency must be greater than 0. concurrency=" + concurrency);
+            }
+            mFunc = func;
+            mConcurrency = concurrency;
+            mReplenishLimit = concurrency - (concurrency >> 2);
+            mScheduler = scheduler;
+        }
+
+        // Upstream side
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            if (subscription == null) {
+                throw new NullPointerException("Reactive Streams rule 2.13: subscription must not be null");
+            }
+            if (!mUpstream.compareAndSet(null, subscription)) {
+                // Rule 2.5: only one upstream
+                subscription.cancel();
+                return;
+            }
+            if (mCancelled) {
+                subscription.cancel();
+                return;
+            }
+            start();
+        }
+
+        @Override
+        public void onNext(final Object item) {
+            if (item == null) {
+                throw new NullPointerException("Reactive Streams rule 2.13: item must not be null");
+            }
+            if (mUpstreamDone || mCancelled || mError.get() != null) {
+                return;
+            }
+
+            final CancellationToken cancellationToken = new CancellationToken();
+            mRunningTokens.add(cancellationToken);
+            mActive.incrementAndGet();
+
+            Promise.resolveOn(item, mScheduler)
+                    .withCancellationToken(cancellationToken)
+                    .then(new Promise(mFunc))
+                    .then(new Func() {
+                        @Override
+                        public void run(Action action, Object data) throws Exception {
+                            action.resolve();
+                            if (data == null) {
+                                onItemError(cancellationToken, new NullPointerException("Func resolved with null, which cannot be emitted"));
+                            } else {
+                                onItemResult(cancellationToken, data);
+                            }
+                        }
+                    }, new Func() {
+                        @Override
+                        public void run(Action action, Object data) throws Exception {
+                            action.resolve();
+                            onItemError(cancellationToken, PromiseException.toThrowable(data));
+                        }
+                    })
+                    .start();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (throwable == null) {
+                throw new NullPointerException("Reactive Streams rule 2.13: throwable must not be null");
+            }
+            if (mError.compareAndSet(null, throwable)) {
+                cancelRunning();
+            }
+            mUpstreamDone = true;
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            mUpstreamDone = true;
+            drain();
+        }
+
+        private void onItemResult(CancellationToken cancellationToken, Object result) {
+            mRunningTokens.remove(cancellationToken);
+            mResults.offer(result);
+            mActive.decrementAndGet();
+            drain();
+        }
+
+        private void onItemError(CancellationToken cancellationToken, Throwable throwable) {
+            mRunningTokens.remove(cancellationToken);
+            // Promise.all style, the first rejection fails the stream
+            fail(throwable);
+            mActive.decrementAndGet();
+            drain();
+        }
+
+        private void fail(Throwable throwable) {
+            if (mError.compareAndSet(null, throwable)) {
+                cancelUpstream();
+                cancelRunning();
+            }
+        }
+
+        // Downstream side
+
+        @Override
+        public void subscribe(Subscriber<? super Object> subscriber) {
+            if (subscriber == null) {
+                throw new NullPointerException("Reactive Streams rule 1.9: subscriber must not be null");
+            }
+            if (!mDownstream.compareAndSet(null, subscriber)) {
+                subscriber.onSubscribe(EmptySubscription.INSTANCE);
+                subscriber.onError(new IllegalStateException("PromiseFlow processor allows only one subscriber"));
+                return;
+            }
+            subscriber.onSubscribe(this);
+            start();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("Reactive Streams rule 3.9: request must be positive. n=" + n));
+            } else {
+                addCap(mRequested, n);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (mCancelled) {
+                return;
+            }
+            mCancelled = true;
+            cancelUpstream();
+            cancelRunning();
+            drain();
+        }
+
+        /**
+         * Request the first items once both the upstream and the downstream are subscribed
+         */
+        private void start() {
+            if (mStartCount.incrementAndGet() == 2) {
+                mUpstream.get().request(mConcurrency);
+            }
+        }
+
+        private void cancelUpstream() {
+            final Subscription upstream = mUpstream.get();
+            if (upstream != null) {
+                upstream.cancel();
+            }
+        }
+
+        private void cancelRunning() {
+            for (CancellationToken cancellationToken : mRunningTokens) {
+                cancellationToken.cancel();
+            }
+        }
+
+        private void drain() {
+            if (mWip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            for (;;) {
+                if (mTerminated) {
+                    mResults.clear();
+                    return;
+                }
+                final Subscriber<? super Object> downstream = mDownstream.get();
+                if (downstream != null) {
+                    if (mCancelled) {
+                        mTerminated = true;
+                        mResults.clear();
+                        return;
+                    }
+
+                    final Throwable error = mError.get();
+                    if (error != null) {
+                        // Errors are signaled without waiting for the demand
+                        mTerminated = true;
+                        mResults.clear();
+                        downstream.onError(error);
+                        return;
+                    }
+
+                    final long requested = mRequested.get();
+                    long emitted = mEmitted;
+                    while (emitted != requested && !mCancelled) {
+                        final Object result = mResults.poll();
+                        if (result == null) {
+                            break;
+                        }
+                        downstream.onNext(result);
+                        emitted++;
+
+                        // A slot is freed when the result is taken by the downstream
+                        if (++mConsumed == mReplenishLimit) {
+                            mConsumed = 0;
+                            if (!mUpstreamDone) {
+                                mUpstream.get().request(mReplenishLimit);
+                            }
+                        }
+                    }
+                    mEmitted = emitted;
+
+                    if (mUpstreamDone && mActive.get() == 0 && mResults.isEmpty() && !mCancelled && mError.get() == null) {
+                        mTerminated = true;
+                        downstream.onComplete();
+                        return;
+                    }
+                }
+
+                missed = mWip.addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Publisher emitting the items of the iterable on demand
+     */
+    static final class IterablePublisher<T> implements Publisher<T> {
+
+        private final Iterable<? extends T> mItems;
+
+        IterablePublisher(Iterable<? extends T> items) {
+            mItems = items;
+        }
+
+        @Override
+        public void subscribe(final Subscriber<? super T> subscriber) {
+            if (subscriber == null) {
+                throw new NullPointerException("Reactive Streams rule 1.9: subscriber must not be null");
+            }
+            subscriber.onSubscribe(new IterableSubscription<T>(subscriber, mItems.iterator()));
+        }
+    }
+
+    private static final class IterableSubscription<T> implements Subscription {
+
+        private final Subscriber<? super T> mSubscriber;
+        private final Iterator<? extends T> mIterator;
+        private final AtomicLong mRequested = new AtomicLong();
+        private volatile boolean mCancelled = false;
+
+        IterableSubscription(Subscriber<? super T> subscriber, Iterator<? extends T> iterator) {
+            mSubscriber = subscriber;
+            mIterator = iterator;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                mCancelled = true;
+                mSubscriber.onError(new IllegalArgumentException("Reactive Streams rule 3.9: request must be positive. n=" + n));
+                return;
+            }
+            if (addCap(mRequested, n) != 0) {
+                // The thread already emitting continues with the added demand (rule 3.3, no recursion)
+                return;
+            }
+
+            long emitted = 0;
+            long requested = mRequested.get();
+            for (;;) {
+                while (emitted != requested) {
+                    if (mCancelled) {
+                        return;
+                    }
+                    if (!mIterator.hasNext()) {
+                        break;
+                    }
+                    mSubscriber.onNext(mIterator.next());
+                    emitted++;
+                }
+                if (mCancelled) {
+                    return;
+                }
+                if (!mIterator.hasNext()) {
+                    // Completion does not need the demand
+                    mCancelled = true;
+                    mSubscriber.onComplete();
+                    return;
+                }
+
+                requested = mRequested.get();
+                if (requested == emitted) {
+                    requested = mRequested.addAndGet(-emitted);
+                    if (requested == 0) {
+                        return;
+                    }
+                    emitted = 0;
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            mCancelled = true;
+        }
+    }
+
+    private static final class EmptySubscription implements Subscription {
+
+        static final EmptySubscription INSTANCE = new EmptySubscription();
+
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2018-2019 Tom Misawa(riversun.org@gmail.com)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.promise;
+
+/**
+ * PromiseMetrics receives the timings of the steps and the chains of Promise.
+ * 
+ * Nothing is measured unless metrics are installed, and in that case the cost is
+ * a couple of System.nanoTime() calls per step.
+ * {@link HistogramPromiseMetrics} is the built-in implementation.
+ * <code>
+HistogramPromiseMetrics metrics = new HistogramPromiseMetrics();
+PromiseMetrics.install(metrics);
+...
+System.out.println(metrics.getExecutionTime("fetch").getValueAtPercentile(99.0));
+</code>
+ * 
+ * The values are tagged by the name of the promise.
+ * 
+ * If the system property "org.riversun.promise.metrics.disabled" is true,
+ * metrics are disabled permanently and the JIT removes the measuring code entirely.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+public interface PromiseMetrics {
+
+    /**
+     * Called with the time a task waited in the scheduler before it started to run
+     * 
+     * @param promiseName
+     * @param nanos
+     */
+    public default void recordQueueDelay(String promiseName, long nanos) {
+    }
+
+    /**
+     * Called with the time spent in {@link Func#run(Action, Object)}
+     * 
+     * @param promiseName
+     * @param nanos
+     */
+    public default void recordExecutionTime(String promiseName, long nanos) {
+    }
+
+    /**
+     * Called with the time from the start of {@link Func#run(Action, Object)} until the step is resolved or rejected
+     * 
+     * @param promiseName
+     * @param nanos
+     */
+    public default void recordTimeToResolve(String promiseName, long nanos) {
+    }
+
+    /**
+     * Called with the time from {@link Promise#start()} until the last step of the chain is finished
+     * 
+     * @param promiseName
+     *            name of the first promise of the chain
+     * @param nanos
+     */
+    public default void recordChainLatency(String promiseName, long nanos) {
+    }
+
+    /**
+     * Called with the number of the elements of Promise.all, Promise.race, Promise.any, Promise.allSettled and
+     * Promise.allLimited
+     * 
+     * @param promiseName
+     * @param width
+     */
+    public default void recordFanOut(String promiseName, int width) {
+    }
+
+    /**
+     * Called when a step is rejected
+     * 
+     * @param promiseName
+     */
+    public default void recordRejection(String promiseName) {
+    }
+
+    /**
+     * Install the metrics.
+     * 
+     * @param metrics
+     */
+    public static void install(PromiseMetrics metrics) {
+        Metrics.setMetrics(metrics);
+    }
+
+    /**
+     * Uninstall the metrics, then nothing is measured.
+     */
+    public static void uninstall() {
+        Metrics.setMetrics(null);
+    }
+
+    /**
+     * Returns the installed metrics or null
+     * 
+     * @return
+     */
+    public static PromiseMetrics getInstalled() {
+        return Metrics.getMetrics();
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2018-2019 Tom Misawa(riversun.org@gmail.com)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.promise;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * PromisePipeline is a then-chain built once and run many times.
+ * 
+ * A pipeline is immutable and thread-safe, "then" returns a new pipeline with the step added.
+ * Each {@link #run(Object)} executes the steps on the scheduler like a Promise chain
+ * started with {@code Promise.resolve(input)}, and only allocates one run state object,
+ * which is returned as the CompletableFuture of the outcome, and one small action for each step.
+ * 
+ * <pre>
+ * final PromisePipeline pipeline = PromisePipeline.of(parseFunc)
+ *         .then(validateFunc)
+ *         .then(saveFunc, recoverFunc);
+ * 
+ * pipeline.run(request).thenAccept(result -&gt; System.out.println(result));
+ * </pre>
+ * 
+ * Cancelling the returned future stops the run before the next step.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+public final class PromisePipeline {
+
+    private final Step[] mSteps;
+    private final PromiseScheduler mScheduler;
+
+    private PromisePipeline(Step[] steps, PromiseScheduler scheduler) {
+        mSteps = steps;
+        mScheduler = scheduler;
+    }
+
+    /**
+     * Returns a pipeline with the first step
+     * 
+     * @param onFulfilled
+     * @return
+     */
+    public static PromisePipeline of(Func onFulfilled) {
+        return of(onFulfilled, null);
+    }
+
+    public static PromisePipeline of(Func onFulfilled, Func onRejected) {
+        return new PromisePipeline(new Step[0], null).then(onFulfilled, onRejected);
+    }
+
+    /**
+     * Returns a new pipeline with the step added, this pipeline is not changed
+     * 
+     * @param onFulfilled
+     * @return
+     */
+    public PromisePipeline then(Func onFulfilled) {
+        return then(onFulfilled, null);
+    }
+
+    public PromisePipeline then(Func onFulfilled, Func onRejected) {
+        final Step[] steps = Arrays.copyOf(mSteps, mSteps.length + 1);
+        steps[mSteps.length] = new Step(onFulfilled, onRejected);
+        return new PromisePipeline(steps, mScheduler);
+    }
+
+    /**
+     * Returns a new pipeline running on the scheduler.
+     * If null is specified, the default scheduler is used.
+     * 
+     * @param scheduler
+     * @return
+     */
+    public PromisePipeline scheduler(PromiseScheduler scheduler) {
+        return new PromisePipeline(mSteps, scheduler);
+    }
+
+    /**
+     * Run the steps with the input as "data" of the first step.
+     * 
+     * The future is completed with the result of the last step, or completed exceptionally with the rejection reason
+     * (wrapped in PromiseException unless it is a Throwable).
+     * 
+     * @param input
+     * @return
+     */
+    public CompletableFuture<Object> run(Object input) {
+        final Run run = new Run(mSteps, input);
+        (mScheduler == null ? PromiseScheduler.getDefault() : mScheduler).execute(run);
+        return run;
+    }
+
+    private static final class Step {
+
+        private final Func mOnFulfilled;
+        private final Func mOnRejected;
+
+        Step(Func onFulfilled, Func onRejected) {
+            mOnFulfilled = onFulfilled;
+            mOnRejected = onRejected;
+        }
+    }
+
+    /**
+     * The state of a run
+     */
+    private static final class Run extends CompletableFuture<Object> implements Runnable {
+
+        // Bits of mState, reset for each step.
+        // The thread that sets the second of PUBLISHED and RETURNED goes on with the next step.
+        private static final int CLAIMED = 1;
+        private static final int PUBLISHED = 2;
+        private static final int RETURNED = 4;
+
+        // The bits above hold the number of the step, so that a late settle from an earlier step is ignored
+        private static final int STEP_SHIFT = 3;
+
+        private static final AtomicIntegerFieldUpdater<Run> STATE = AtomicIntegerFieldUpdater.newUpdater(Run.class, "mState");
+
+        private final Step[] mSteps;
+
+        // Handed over between the threads through mState
+        private int mIndex;
+        private Status mStatus = Status.FULFILLED;
+        private Object mData;
+
+        private volatile int mState;
+
+        Run(Step[] steps, Object input) {
+            mSteps = steps;
+            mData = input;
+        }
+
+        @Override
+        public void run() {
+            while (mIndex < mSteps.length) {
+                if (isDone()) {
+                    // Cancelled through the future
+                    return;
+                }
+
+                final Step step = mSteps[mIndex++];
+                final Func func = mStatus == Status.FULFILLED ? step.mOnFulfilled : step.mOnRejected;
+                if (func == null) {
+                    // Hand over the result to the next step as it is
+                    continue;
+                }
+
+                final int stepNumber = mIndex;
+                mState = stepNumber << STEP_SHIFT;
+                try {
+                    func.run(new StepAction(this, stepNumber), mData);
+                } catch (Exception e) {
+                    settle(stepNumber, Status.REJECTED, e);
+                }
+
+                if ((STATE.getAndAdd(this, RETURNED) & PUBLISHED) == 0) {
+                    // The thread settling this step later goes on with the run
+                    return;
+                }
+            }
+
+            if (mStatus == Status.FULFILLED) {
+                complete(mData);
+            } else {
+                completeExceptionally(PromiseException.toThrowable(mData));
+            }
+        }
+
+        void settle(int stepNumber, Status status, Object data) {
+            for (;;) {
+                final int state = mState;
+                if (state >>> STEP_SHIFT != stepNumber) {
+                    // Settled by the action of a step already finished
+                    return;
+                }
+                if ((state & CLAIMED) != 0) {
+                    // Only the first call settles the step
+                    return;
+                }
+                if (STATE.compareAndSet(this, state, state | CLAIMED)) {
+                    break;
+                }
+            }
+            mStatus = status;
+            mData = data;
+            if ((STATE.getAndAdd(this, PUBLISHED) & RETURNED) != 0) {
+                // The func has already returned, so continue on this thread like a Promise chain does
+                run();
+            }
+        }
+    }
+
+    /**
+     * Action of a step, only the first of resolve and reject settles the step
+     */
+    private static final class StepAction implements Action {
+
+        private final Run mRun;
+        private final int mStepNumber;
+
+        StepAction(Run run, int stepNumber) {
+            mRun = run;
+            mStepNumber = stepNumber;
+        }
+
+        @Override
+        public void resolve(Object result) {
+            mRun.settle(mStepNumber, Status.FULFILLED, result);
+        }
+
+        @Override
+        public void resolve() {
+            mRun.settle(mStepNumber, Status.FULFILLED, null);
+        }
+
+        @Override
+        public void reject(Object reason) {
+            mRun.settle(mStepNumber, Status.REJECTED, reason);
+        }
+
+        @Override
+        public void reject() {
+            mRun.settle(mStepNumber, Status.REJECTED, null);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2018-2019 Tom Misawa(riversun.org@gmail.com)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.promise;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Rejection reason of Promise.retry when it gives up.
+ * 
+ * Holds the rejection reasons of all the attempts.
+ * The cause is the reason of the last attempt if it is a Throwable.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+@SuppressWarnings("serial")
+public class PromiseRetryException extends Exception {
+
+    private final List<Object> mReasons;
+
+    PromiseRetryException(String message, List<Object> reasons) {
+        super(message, toCause(reasons));
+        mReasons = Collections.unmodifiableList(reasons);
+    }
+
+    private static Throwable toCause(List<Object> reasons) {
+        final Object lastReason = reasons.isEmpty() ? null : reasons.get(reasons.size() - 1);
+        return lastReason instanceof Throwable ? (Throwable) lastReason : null;
+    }
+
+    /**
+     * Returns the rejection reasons in the order of the attempts
+     * 
+     * @return
+     */
+    public List<Object> getReasons() {
+        return mReasons;
+    }
+
+    /**
+     * Returns the number of attempts
+     * 
+     * @return
+     */
+    public int getAttempts() {
+        return mReasons.size();
+    }
+}
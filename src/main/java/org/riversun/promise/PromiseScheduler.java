@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2018-2019 Tom Misawa(riversun.org@gmail.com)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.promise;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * PromiseScheduler decides on which thread the steps of a Promise chain are executed.
+ * 
+ * By default, all of the chains share one process-wide scheduler(see {@link DefaultPromiseScheduler}),
+ * so that no thread pool is created per chain.
+ * 
+ * You can replace the default scheduler with your own implementation.
+ * <code>
+PromiseScheduler.setDefault(myScheduler);
+</code>
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+public interface PromiseScheduler {
+
+    /**
+     * Execute the task on the thread managed by this scheduler
+     * 
+     * @param task
+     */
+    public void execute(Runnable task);
+
+    /**
+     * Returns true if this scheduler is shared by multiple chains.
+     * A shared scheduler is never shut down when a chain is finished.
+     * 
+     * @return
+     */
+    public boolean isShared();
+
+    /**
+     * Shut down this scheduler.
+     * It is called when the chain which owns this scheduler is finished.
+     */
+    public void shutdown();
+
+    /**
+     * Returns the process-wide default scheduler
+     * 
+     * @return
+     */
+    public static PromiseScheduler getDefault() {
+        return DefaultPromiseScheduler.getInstance();
+    }
+
+    /**
+     * Replace the process-wide default scheduler.
+     * If null is specified, the built-in default scheduler will be used.
+     * 
+     * @param scheduler
+     */
+    public static void setDefault(PromiseScheduler scheduler) {
+        DefaultPromiseScheduler.setInstance(scheduler);
+    }
+
+    /**
+     * Returns the shared scheduler that runs each task on its own virtual thread.
+     * 
+     * It is available on Java 21 or later.
+     * 
+     * @return
+     * @throws UnsupportedOperationException
+     *             if virtual threads are not available on this JVM
+     */
+    public static PromiseScheduler virtual() {
+        return VirtualThreadScheduler.getInstance();
+    }
+
+    /**
+     * Returns a scheduler that executes tasks on the specified executor.
+     * The executor is NOT shut down automatically, please shut it down after use.
+     * 
+     * @param executor
+     * @return
+     */
+    public static PromiseScheduler of(ExecutorService executor) {
+        return new ExecutorServiceScheduler(executor);
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2018-2019 Tom Misawa(riversun.org@gmail.com)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.promise;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hashed wheel timer shared by all the timeouts of Promise and SyncPromise.
+ * 
+ * A single daemon thread advances the wheel every tick and runs the expired tasks.
+ * Arming and cancelling a timeout only queues it, so it costs O(1) however many timeouts are outstanding.
+ * The accuracy is one tick(default:10ms).
+ * 
+ * The expired tasks run on the timer thread, so they must be short and must not block.
+ * 
+ * The following system property is available.
+ * 
+ * <pre>
+ * org.riversun.promise.timer.tickMillis  tick duration of the wheel (default:10)
+ * </pre>
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+final class PromiseTimer {
+
+    static final String PROP_TICK_MILLIS = "org.riversun.promise.timer.tickMillis";
+
+    private static final Logger LOGGER = Logger.getLogger(PromiseTimer.class.getName());
+
+    private static final int WHEEL_SIZE = 512;
+
+    private static final class Holder {
+        static final PromiseTimer INSTANCE = new PromiseTimer(Long.getLong(PROP_TICK_MILLIS, 10L), WHEEL_SIZE, "promise-timer");
+    }
+
+    private final long mTickNanos;
+    private final Bucket[] mWheel;
+    private final int mMask;
+    private final long mStartTime;
+
+    // Timeouts armed by any thread, moved into the wheel by the timer thread
+    private final Queue<Timeout> mArmedQueue = new ConcurrentLinkedQueue<Timeout>();
+    private final Queue<Timeout> mCancelledQueue = new ConcurrentLinkedQueue<Timeout>();
+
+    // Number of timeouts neither expired nor cancelled
+    private final AtomicInteger mPendingCount = new AtomicInteger();
+
+    private final Thread mTimerThread;
+
+    // Accessed only by the timer thread
+    private long mTick = 0;
+
+    PromiseTimer(long tickMillis, int wheelSize, String threadName) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("tickMillis must be greater than 0. tickMillis=" + tickMillis);
+        }
+        int normalizedSize = 1;
+        while (normalizedSize < wheelSize) {
+            normalizedSize <<= 1;
+        }
+        mTickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        mWheel = new Bucket[normalizedSize];
+        for (int i = 0; i < normalizedSize; i++) {
+            mWheel[i] = new Bucket();
+        }
+        mMask = normalizedSize - 1;
+        mStartTime = System.nanoTime();
+
+        mTimerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                work();
+            }
+        }, threadName);
+        mTimerThread.setDaemon(true);
+        mTimerThread.start();
+    }
+
+    static PromiseTimer getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Run the task on the timer thread after the delay
+     * 
+     * @param task
+     * @param delayMillis
+     * @return handle to cancel
+     */
+    Timeout schedule(Runnable task, long delayMillis) {
+        final long deadline = System.nanoTime() - mStartTime + TimeUnit.MILLISECONDS.toNanos(Math.max(delayMillis, 0));
+        final Timeout timeout = new Timeout(this, task, deadline);
+        mArmedQueue.add(timeout);
+        if (mPendingCount.getAndIncrement() == 0) {
+            // Wake up the timer thread sleeping while there is no timeout
+            LockSupport.unpark(mTimerThread);
+        }
+        return timeout;
+    }
+
+    /**
+     * Returns the number of timeouts neither expired nor cancelled
+     * 
+     * @return
+     */
+    int getPendingCount() {
+        return mPendingCount.get();
+    }
+
+    private void work() {
+        for (;;) {
+            if (mPendingCount.get() == 0) {
+                // Only the cancelled ones are left, drop them
+                removeCancelled();
+                transferArmed();
+
+                if (mPendingCount.get() == 0) {
+                    LockSupport.park(this);
+
+                    // Nothing has been in the wheel, so the ticks passed while sleeping can be skipped
+                    mTick = Math.max(mTick, (System.nanoTime() - mStartTime) / mTickNanos);
+                }
+                continue;
+            }
+
+            waitForNextTick();
+            removeCancelled();
+            transferArmed();
+            mWheel[(int) (mTick & mMask)].expireTimeouts();
+            mTick++;
+        }
+    }
+
+    private void waitForNextTick() {
+        final long deadline = mTickNanos * (mTick + 1);
+        for (;;) {
+            final long sleepNanos = deadline - (System.nanoTime() - mStartTime);
+            if (sleepNanos <= 0) {
+                return;
+            }
+            LockSupport.parkNanos(this, sleepNanos);
+        }
+    }
+
+    private void transferArmed() {
+        Timeout timeout;
+        while ((timeout = mArmedQueue.poll()) != null) {
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            final long calculated = timeout.mDeadline / mTickNanos;
+            timeout.mRemainingRounds = (calculated - mTick) / mWheel.length;
+
+            // Put the timeout whose deadline has already passed into the current bucket
+            final long ticks = Math.max(calculated, mTick);
+            mWheel[(int) (ticks & mMask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = mCancelledQueue.poll()) != null) {
+            if (timeout.mBucket != null) {
+                timeout.mBucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * Handle of a scheduled task
+     */
+    static final class Timeout {
+
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "mState");
+
+        private final PromiseTimer mTimer;
+        private final Runnable mTask;
+        private final long mDeadline;
+
+        private volatile int mState = ST_INIT;
+
+        // Accessed only by the timer thread
+        private long mRemainingRounds;
+        private Timeout mNext;
+        private Timeout mPrev;
+        private Bucket mBucket;
+
+        private Timeout(PromiseTimer timer, Runnable task, long deadline) {
+            mTimer = timer;
+            mTask = task;
+            mDeadline = deadline;
+        }
+
+        /**
+         * Cancel the task
+         * 
+         * @return false if already expired or cancelled
+         */
+        boolean cancel() {
+            if (!STATE.compareAndSet(this, ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            mTimer.mPendingCount.decrementAndGet();
+            mTimer.mCancelledQueue.add(this);
+            return true;
+        }
+
+        boolean isCancelled() {
+            return mState == ST_CANCELLED;
+        }
+
+        boolean isExpired() {
+            return mState == ST_EXPIRED;
+        }
+
+        private void expire() {
+            if (!STATE.compareAndSet(this, ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+            mTimer.mPendingCount.decrementAndGet();
+            try {
+                mTask.run();
+            } catch (Throwable t) {
+                LOGGER.log(Level.WARNING, "Timeout task threw an exception", t);
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of the timeouts in a slot of the wheel
+     */
+    private static final class Bucket {
+
+        private Timeout mHead;
+        private Timeout mTail;
+
+        void add(Timeout timeout) {
+            timeout.mBucket = this;
+            if (mHead == null) {
+                mHead = mTail = timeout;
+            } else {
+                mTail.mNext = timeout;
+                timeout.mPrev = mTail;
+                mTail = timeout;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            final Timeout next = timeout.mNext;
+            if (timeout.mPrev != null) {
+                timeout.mPrev.mNext = next;
+            }
+            if (next != null) {
+                next.mPrev = timeout.mPrev;
+            }
+            if (timeout == mHead) {
+                mHead = next;
+            }
+            if (timeout == mTail) {
+                mTail = timeout.mPrev;
+            }
+            timeout.mPrev = null;
+            timeout.mNext = null;
+            timeout.mBucket = null;
+        }
+
+        void expireTimeouts() {
+            Timeout timeout = mHead;
+            while (timeout != null) {
+                final Timeout next = timeout.mNext;
+                if (timeout.mRemainingRounds <= 0) {
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.mRemainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2018-2019 Tom Misawa(riversun.org@gmail.com)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.promise;
+
+/**
+ * PromiseTracer receives the events of each phase of Promise.
+ * 
+ * Nothing is traced unless a tracer is installed, and in that case the tracing costs
+ * only a check of a field, no strings or event objects are built.
+ * <code>
+PromiseTracer.install((promiseId, promiseName, phase, thread, detail) -> {
+    System.out.println(promiseId + " " + phase + " on " + thread.getName());
+});
+</code>
+ * 
+ * If the system property "org.riversun.promise.trace.disabled" is true,
+ * tracing is disabled permanently and the JIT removes the tracing code entirely.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+public interface PromiseTracer {
+
+    /**
+     * Phases of Promise
+     */
+    public enum Phase {
+        CONSTRUCT, THEN, START, IGNITE, RUN, RESOLVE, REJECT, FINISH, SHUTDOWN, ALL
+    }
+
+    /**
+     * Called on each phase of Promise.
+     * Note that it is called on the thread on which the phase is executed.
+     * 
+     * @param promiseId
+     *            id of the promise, unique in the process
+     * @param promiseName
+     *            name of the promise
+     * @param phase
+     * @param thread
+     *            thread on which the phase is executed
+     * @param detail
+     *            the object related to the phase (result, reason, func, scheduler, etc.) or null
+     */
+    public void trace(long promiseId, String promiseName, Phase phase, Thread thread, Object detail);
+
+    /**
+     * Install the tracer.
+     * 
+     * @param tracer
+     */
+    public static void install(PromiseTracer tracer) {
+        Tracing.setTracer(tracer);
+    }
+
+    /**
+     * Uninstall the tracer, then nothing is traced.
+     */
+    public static void uninstall() {
+        Tracing.setTracer(null);
+    }
+
+    /**
+     * Returns the installed tracer or null
+     * 
+     * @return
+     */
+    public static PromiseTracer getInstalled() {
+        return Tracing.getTracer();
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2018-2019 Tom Misawa(riversun.org@gmail.com)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.promise;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Policy of {@link Promise#retry(Func, RetryPolicy)}.
+ * 
+ * The delay before the n-th retry is initialDelayMillis * multiplier^(n-1), up to maxDelayMillis,
+ * spread by +/- jitter to avoid retrying in lockstep.
+ * 
+ * <pre>
+ * RetryPolicy policy = new RetryPolicy()
+ *         .maxAttempts(5)
+ *         .backoff(100, 2.0, 5000)
+ *         .jitter(0.2)
+ *         .maxDurationMillis(10000)
+ *         .retryIf(reason -&gt; reason instanceof IOException);
+ * </pre>
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+public final class RetryPolicy {
+
+    private int mMaxAttempts = 3;
+    private long mInitialDelayMillis = 100;
+    private double mMultiplier = 2.0;
+    private long mMaxDelayMillis = 10000;
+    private double mJitter = 0.2;
+    private long mMaxDurationMillis = 0;
+    private Predicate<Object> mRetryIf = null;
+
+    /**
+     * Set the maximum number of attempts including the first one(default:3)
+     * 
+     * @param maxAttempts
+     * @return
+     */
+    public RetryPolicy maxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be greater than 0 but was " + maxAttempts);
+        }
+        mMaxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * Set the exponential backoff(default:100ms, x2.0, up to 10000ms)
+     * 
+     * @param initialDelayMillis
+     * @param multiplier
+     * @param maxDelayMillis
+     * @return
+     */
+    public RetryPolicy backoff(long initialDelayMillis, double multiplier, long maxDelayMillis) {
+        if (initialDelayMillis < 0 || maxDelayMillis < initialDelayMillis) {
+            throw new IllegalArgumentException("0 <= initialDelayMillis <= maxDelayMillis is required but was initialDelayMillis="
+                    + initialDelayMillis + " maxDelayMillis=" + maxDelayMillis);
+        }
+        if (multiplier < 1.0) {
+            throw new IllegalArgumentException("multiplier must not be less than 1.0 but was " + multiplier);
+        }
+        mInitialDelayMillis = initialDelayMillis;
+        mMultiplier = multiplier;
+        mMaxDelayMillis = maxDelayMillis;
+        return this;
+    }
+
+    /**
+     * Set the fixed delay between the attempts
+     * 
+     * @param delayMillis
+     * @return
+     */
+    public RetryPolicy fixedDelay(long delayMillis) {
+        return backoff(delayMillis, 1.0, delayMillis);
+    }
+
+    /**
+     * Set the random spread of the delay as a fraction of it(0.0 to 1.0, default:0.2)
+     * 
+     * @param jitter
+     * @return
+     */
+    public RetryPolicy jitter(double jitter) {
+        if (jitter < 0.0 || jitter > 1.0) {
+            throw new IllegalArgumentException("jitter must be between 0.0 and 1.0 but was " + jitter);
+        }
+        mJitter = jitter;
+        return this;
+    }
+
+    /**
+     * Give up when the next attempt would start after the duration since the first attempt(0:no limit)
+     * 
+     * @param maxDurationMillis
+     * @return
+     */
+    public RetryPolicy maxDurationMillis(long maxDurationMillis) {
+        if (maxDurationMillis < 0) {
+            throw new IllegalArgumentException("maxDurationMillis must not be negative but was " + maxDurationMillis);
+        }
+        mMaxDurationMillis = maxDurationMillis;
+        return this;
+    }
+
+    /**
+     * Retry only the rejections whose reason matches the predicate(default:all)
+     * 
+     * @param retryIf
+     * @return
+     */
+    public RetryPolicy retryIf(Predicate<Object> retryIf) {
+        mRetryIf = retryIf;
+        return this;
+    }
+
+    int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    long getMaxDurationNanos() {
+        return TimeUnit.MILLISECONDS.toNanos(mMaxDurationMillis);
+    }
+
+    boolean isRetryable(Object reason) {
+        return mRetryIf == null || mRetryIf.test(reason);
+    }
+
+    /**
+     * Returns the delay before the attempt following the failed one
+     * 
+     * @param failedAttempts
+     *            number of attempts failed so far
+     * @return
+     */
+    long getDelayMillis(int failedAttempts) {
+        final double delay = Math.min(mMaxDelayMillis, mInitialDelayMillis * Math.pow(mMultiplier, failedAttempts - 1));
+        if (mJitter == 0.0) {
+            return (long) delay;
+        }
+        final double spread = delay * mJitter * (ThreadLocalRandom.current().nextDouble() * 2.0 - 1.0);
+        return Math.max(0L, (long) (delay + spread));
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy [maxAttempts=" + mMaxAttempts + ", initialDelayMillis=" + mInitialDelayMillis + ", multiplier="
+                + mMultiplier + ", maxDelayMillis=" + mMaxDelayMillis + ", jitter=" + mJitter + ", maxDurationMillis="
+                + mMaxDurationMillis + "]";
+    }
+}
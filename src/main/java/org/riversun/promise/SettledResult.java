@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2018-2019 Tom Misawa(riversun.org@gmail.com)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.promise;
+
+/**
+ * Outcome of each element of Promise.allSettled
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+public final class SettledResult {
+
+    private final Status mStatus;
+    private final Object mValue;
+
+    SettledResult(Status status, Object value) {
+        mStatus = status;
+        mValue = value;
+    }
+
+    /**
+     * Returns FULFILLED or REJECTED
+     * 
+     * @return
+     */
+    public Status getStatus() {
+        return mStatus;
+    }
+
+    /**
+     * Returns the result if fulfilled, or the reason if rejected
+     * 
+     * @return
+     */
+    public Object getValue() {
+        return mValue;
+    }
+
+    public boolean isFulfilled() {
+        return mStatus == Status.FULFILLED;
+    }
+
+    public boolean isRejected() {
+        return mStatus == Status.REJECTED;
+    }
+
+    @Override
+    public String toString() {
+        return "SettledResult [" + mStatus + ":" + mValue + "]";
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2018-2019 Tom Misawa(riversun.org@gmail.com)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.promise;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The outcome of a single load shared by all the promises waiting for it.
+ * 
+ * The status can be read without a lock once settled.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+final class SharedResult {
+
+    private volatile Status mStatus = Status.PENDING;
+    private volatile Object mValue;
+
+    // Guarded by this, null after settled
+    private List<Action> mActions = new ArrayList<Action>(1);
+
+    Status getStatus() {
+        return mStatus;
+    }
+
+    Object getValue() {
+        return mValue;
+    }
+
+    /**
+     * Settle the action now if settled, otherwise when settled
+     */
+    void addAction(Action action) {
+        synchronized (this) {
+            if (mStatus == Status.PENDING) {
+                mActions.add(action);
+                return;
+            }
+        }
+        settleAction(action);
+    }
+
+    /**
+     * Returns a promise that is settled with this result
+     */
+    Promise toPromise(String name, PromiseScheduler scheduler) {
+        final Object data = null;
+        return Promise.resolveOn(data, scheduler).then(new Promise(name, new Func() {
+            @Override
+            public void run(Action action, Object data) throws Exception {
+                addAction(action);
+            }
+        }));
+    }
+
+    /**
+     * Only the first call settles
+     * 
+     * @return true if settled by this call
+     */
+    boolean settle(Status status, Object value) {
+        final List<Action> actions;
+        synchronized (this) {
+            if (mStatus != Status.PENDING) {
+                return false;
+            }
+            mValue = value;
+            mStatus = status;
+            actions = mActions;
+            mActions = null;
+        }
+        for (Action action : actions) {
+            settleAction(action);
+        }
+        return true;
+    }
+
+    private void settleAction(Action action) {
+        if (mStatus == Status.FULFILLED) {
+            action.resolve(mValue);
+        } else {
+            action.reject(mValue);
+        }
+    }
+}
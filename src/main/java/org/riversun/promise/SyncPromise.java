@@ -23,13 +23,22 @@
 package org.riversun.promise;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * 
@@ -81,11 +90,24 @@ import java.util.concurrent.Semaphore;
  */
 public class SyncPromise implements Thennable {
 
+    static final String PROP_SPIN_COUNT = "org.riversun.promise.sync.spinCount";
+
+    // Number of checks before parking the thread waiting for an async step, no spinning on a single core
+    private static final int SPIN_COUNT = Runtime.getRuntime().availableProcessors() > 1 ? Integer.getInteger(PROP_SPIN_COUNT, 1000) : 0;
+
     private final Func mFunc;
 
     private Status mStatus = Status.PENDING;
     private Object mResult;
     private SyncPromise mNextPromise;
+    private CancellationToken mCancellationToken;
+
+    // Timeout of the step, set on the handler promise
+    private long mStepTimeoutMillis = 0;
+
+    // Timeout of the chain, handed over to each step like the cancellation token
+    private long mChainTimeoutMillis = 0;
+    private long mChainDeadline;
 
     public SyncPromise() {
         mFunc = null;
@@ -126,6 +148,20 @@ public class SyncPromise implements Thennable {
         return then(promiseList.toArray(new SyncPromise[0]));
     }
 
+    /**
+     * Specify the operation to be performed after the promise processing.
+     * The step is rejected with TimeoutException unless the func calls resolve or reject within the time.
+     * 
+     * @param onFulfilled
+     * @param timeoutMillis
+     * @return Promise
+     */
+    public SyncPromise then(Func onFulfilled, long timeoutMillis) {
+        final SyncPromise promise = new SyncPromise(onFulfilled);
+        promise.mStepTimeoutMillis = timeoutMillis;
+        return then(promise);
+    }
+
     /**
      * Specify the operation to be performed after the promise processing.
      * 
@@ -147,47 +183,49 @@ public class SyncPromise implements Thennable {
             throw new RuntimeException("Please set  at least one Promise.");
         }
 
-        if (this.mStatus == Status.FULFILLED) {
-            mNextPromise = (SyncPromise) onFulfilled;
+        if (this.mStatus == Status.PENDING) {
+            // Not settled, for example not started, so there is no outcome to hand over yet
+            return mNextPromise;
+        }
 
-            if (mNextPromise != null && mNextPromise.mFunc != null) {
-                this.invokeFunction(mNextPromise.mFunc, this.mResult);
-            } else {
-                // Skip if resolve is not explicitly set
-                final SyncPromise skipPromise = new SyncPromise(new Func() {
-                    @Override
-                    public void run(Action action, Object data) {
-                        action.resolve(data);
-                    }
-                });
-                mNextPromise = skipPromise;
-                this.invokeFunction(mNextPromise.mFunc, this.mResult);
-                return mNextPromise;
-            }
+        if (mChainTimeoutMillis > 0 && System.nanoTime() - mChainDeadline >= 0) {
+            // Past the deadline before this step
+            cancelOnChainTimeout(mCancellationToken, mChainTimeoutMillis);
         }
 
-        if (this.mStatus == Status.REJECTED) {
-            mNextPromise = (SyncPromise) onRejected;
-            if (mNextPromise != null && mNextPromise.mFunc != null) {
-                this.invokeFunction(mNextPromise.mFunc, this.mResult);
-            } else {
+        Status status = this.mStatus;
+        Object result = this.mResult;
 
-                // Following should only be displayed if there was no then to handle rejects at the very end
-                // System.err.println("Unhandled promise rejection.Please handle rejection with #then(,[rejection-handler])");
+        if (status == Status.FULFILLED && mCancellationToken != null && mCancellationToken.isCancelled()) {
+            // The chain is cancelled, so skip this step and hand over the reason to the rejection handler
+            status = Status.REJECTED;
+            result = mCancellationToken.getReason();
+        }
 
-                // Skip if reject function is not explicitly set
-                final SyncPromise skipPromise = new SyncPromise(new Func() {
-                    @Override
-                    public void run(Action action, Object data) {
-                        action.reject(data);
-                    }
-                });
-                mNextPromise = skipPromise;
-                this.invokeFunction(mNextPromise.mFunc, this.mResult);
-            }
+        final SyncPromise handler = (SyncPromise) (status == Status.FULFILLED ? onFulfilled : onRejected);
+
+        if (handler != null && handler.mFunc != null) {
+            mNextPromise = handler;
+            this.invokeFunction(mNextPromise.mFunc, result, status == Status.FULFILLED);
+            return mNextPromise;
+        }
+
+        // Following should only be displayed if there was no then to handle rejects at the very end
+        // System.err.println("Unhandled promise rejection.Please handle rejection with #then(,[rejection-handler])");
+
+        if (status == this.mStatus) {
+            // No handler for the outcome, so hand over this promise as it is instead of running a step
+            return this;
         }
 
-        return mNextPromise;
+        // Fulfilled but cancelled, so hand over the reason
+        final SyncPromise cancelledPromise = new SyncPromise();
+        cancelledPromise.mStatus = status;
+        cancelledPromise.mResult = result;
+        cancelledPromise.mCancellationToken = mCancellationToken;
+        cancelledPromise.mChainTimeoutMillis = mChainTimeoutMillis;
+        cancelledPromise.mChainDeadline = mChainDeadline;
+        return cancelledPromise;
     }
 
     @Override
@@ -201,74 +239,228 @@ public class SyncPromise implements Thennable {
         return then(promise, promise);
     }
 
+    /**
+     * Attach the cancellation token to the chain.
+     * Call before the first "then" because SyncPromise runs each step in "then".
+     * 
+     * Once cancelled, the steps that follow are skipped and the step waiting for
+     * resolve or reject returns immediately as rejected with the cancellation reason.
+     * 
+     * @param cancellationToken
+     * @return this
+     */
+    public SyncPromise withCancellationToken(CancellationToken cancellationToken) {
+        mCancellationToken = cancellationToken;
+        if (mCancellationToken == null && mChainTimeoutMillis > 0) {
+            // The chain timeout needs a token to cancel
+            mCancellationToken = new CancellationToken();
+        }
+        return SyncPromise.this;
+    }
+
+    /**
+     * Reject the chain with TimeoutException unless it finishes within the time from now.
+     * Call before the first "then" because SyncPromise runs each step in "then".
+     * 
+     * On timeout, the chain is cancelled in the same way as {@link CancellationToken#cancel(Object)}.
+     * The timer is armed only while a step is waiting, so nothing is left behind once the chain has finished in time.
+     * 
+     * @param timeoutMillis
+     * @return this
+     */
+    public SyncPromise timeout(final long timeoutMillis) {
+        if (mCancellationToken == null) {
+            mCancellationToken = new CancellationToken();
+        }
+        mChainTimeoutMillis = timeoutMillis;
+        mChainDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        return SyncPromise.this;
+    }
+
+    private static void cancelOnChainTimeout(CancellationToken cancellationToken, long timeoutMillis) {
+        cancellationToken.cancel(new TimeoutException("Promise timed out after " + timeoutMillis + " ms"));
+    }
+
     @Override
     public SyncPromise start() {
         return SyncPromise.this;
     }
 
     /**
-     * Invoke function object
+     * Invoke function object.
+     * 
+     * Most funcs resolve or reject before returning, then the chain goes on without waiting.
+     * Otherwise, the calling thread spins for a while and then parks until the step is settled.
      * 
      * @param func
      * @param previousPromiseResult
+     * @param onFulfilled
+     *            true if the func is for fulfilled, false if for rejected
      */
-    private void invokeFunction(Func func, Object previousPromiseResult) {
+    private void invokeFunction(Func func, Object previousPromiseResult, boolean onFulfilled) {
 
-        // Semaphore for blocking func execution until resolve or reject is called
-        final Semaphore semaphore = new Semaphore(0);
+        final SyncPromise nextPromise = mNextPromise;
+        final CancellationToken cancellationToken = mCancellationToken;
+        nextPromise.mCancellationToken = cancellationToken;
+        nextPromise.mChainTimeoutMillis = mChainTimeoutMillis;
+        nextPromise.mChainDeadline = mChainDeadline;
 
-        try {
-            func.run(new Action() {
-                @Override
-                public void resolve(Object result) {
-                    mNextPromise.mResult = result;
-                    mNextPromise.mStatus = Status.FULFILLED;
+        final long timeoutMillis = nextPromise.mStepTimeoutMillis;
 
-                    // Releases a permit, returning it to the semaphore.
-                    semaphore.release();
-                }
+        final Step step = new Step(cancellationToken);
 
+        Runnable cancellationListener = null;
+        if (cancellationToken != null) {
+            cancellationListener = new Runnable() {
                 @Override
-                public void reject(Object result) {
-                    mNextPromise.mResult = result;
-                    mNextPromise.mStatus = Status.REJECTED;
-
-                    // Releases a permit, returning it to the semaphore.
-                    semaphore.release();
+                public void run() {
+                    // Stop waiting for the func
+                    step.reject(cancellationToken.getReason());
                 }
+            };
+            if (!cancellationToken.addListener(cancellationListener) && onFulfilled) {
+                // Already cancelled, so the func is not waited for.
+                // Rejection handlers receive the reason and may recover the chain as on Promise.
+                step.reject(cancellationToken.getReason());
+            }
+        }
 
+        PromiseTimer.Timeout stepTimeout = null;
+        if (timeoutMillis > 0) {
+            stepTimeout = PromiseTimer.getInstance().schedule(new Runnable() {
                 @Override
-                public void resolve() {
-                    resolve(null);
+                public void run() {
+                    step.reject(new TimeoutException("Promise step timed out after " + timeoutMillis + " ms"));
                 }
+            }, timeoutMillis);
+        }
 
+        PromiseTimer.Timeout chainTimeout = null;
+        final long chainTimeoutMillis = mChainTimeoutMillis;
+        if (chainTimeoutMillis > 0) {
+            chainTimeout = PromiseTimer.getInstance().schedule(new Runnable() {
                 @Override
-                public void reject() {
-                    reject(null);
+                public void run() {
+                    cancelOnChainTimeout(cancellationToken, chainTimeoutMillis);
                 }
-            }, previousPromiseResult);
+            }, Math.max(0, TimeUnit.NANOSECONDS.toMillis(mChainDeadline - System.nanoTime())));
+        }
+
+        try {
+            func.run(step, previousPromiseResult);
         } catch (Exception e) {
             // Exception is treated as reject
-            mNextPromise.mResult = e;
-            mNextPromise.mStatus = Status.REJECTED;
-
-            // Releases a permit, returning it to the semaphore.
-            semaphore.release();
+            step.reject(e);
         }
 
         try {
-            // Use semaphores to wait for resolve or reject execution
-            // Acquires a permit from this semaphore, blocking until semaphore is available,
-            // or the thread is interrupted.
-            semaphore.acquire();
-        } catch (InterruptedException e) {
-            // Interruption is treated as reject
-            e.printStackTrace();
-            mNextPromise.mResult = null;
-            // mNextPromise.mIsRejected = true;
-            mNextPromise.mStatus = Status.REJECTED;
+            if (!step.isSettled()) {
+                step.await();
+            }
+            nextPromise.mResult = step.mResult;
+            nextPromise.mStatus = step.mStatus;
+        } finally {
+            if (cancellationListener != null) {
+                cancellationToken.removeListener(cancellationListener);
+            }
+            if (stepTimeout != null) {
+                stepTimeout.cancel();
+            }
+            if (chainTimeout != null) {
+                chainTimeout.cancel();
+            }
+        }
+    }
+
+    /**
+     * Action of a step. Only the first of resolve and reject settles the step.
+     */
+    private static final class Step implements Action {
+
+        private static final int PENDING = 0;
+        private static final int SETTLING = 1;
+        private static final int SETTLED = 2;
+
+        private static final AtomicIntegerFieldUpdater<Step> STATE = AtomicIntegerFieldUpdater.newUpdater(Step.class, "mState");
+
+        private final CancellationToken mCancellationToken;
+
+        private volatile int mState = PENDING;
+
+        // Written before mState becomes SETTLED
+        private Status mStatus;
+        private Object mResult;
+
+        // Thread parked in await
+        private volatile Thread mWaiter;
+
+        Step(CancellationToken cancellationToken) {
+            mCancellationToken = cancellationToken;
+        }
+
+        @Override
+        public void resolve(Object result) {
+            settle(Status.FULFILLED, result);
+        }
+
+        @Override
+        public void reject(Object result) {
+            settle(Status.REJECTED, result);
+        }
+
+        @Override
+        public void resolve() {
+            resolve(null);
         }
 
+        @Override
+        public void reject() {
+            reject(null);
+        }
+
+        @Override
+        public CancellationToken getCancellationToken() {
+            return mCancellationToken;
+        }
+
+        boolean isSettled() {
+            return mState == SETTLED;
+        }
+
+        private void settle(Status status, Object result) {
+            if (!STATE.compareAndSet(this, PENDING, SETTLING)) {
+                return;
+            }
+            mStatus = status;
+            mResult = result;
+            mState = SETTLED;
+
+            final Thread waiter = mWaiter;
+            if (waiter != null) {
+                LockSupport.unpark(waiter);
+            }
+        }
+
+        /**
+         * Wait until settled, spinning first since a func settled on another thread often finishes soon
+         */
+        void await() {
+            for (int i = 0; i < SPIN_COUNT; i++) {
+                if (mState == SETTLED) {
+                    return;
+                }
+            }
+
+            mWaiter = Thread.currentThread();
+            while (mState != SETTLED) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    // Interruption is treated as reject
+                    settle(Status.REJECTED, null);
+                }
+            }
+            mWaiter = null;
+        }
     }
 
     public Status getStatus() {
@@ -325,6 +517,58 @@ public class SyncPromise implements Thennable {
         return reject(null);
     }
 
+    /**
+     * Returns a Promise object that is settled with the result of the CompletionStage.
+     * 
+     * Like the other steps of SyncPromise, this waits for the stage on the calling thread,
+     * but no other thread is used to wait.
+     * If rejected, the reason is the exception of the stage
+     * (the cause of CompletionException, or the reason carried by PromiseException).
+     * 
+     * @param stage
+     * @return
+     */
+    public static SyncPromise from(final CompletionStage<?> stage) {
+        return SyncPromise.resolve().then(new Func() {
+            @Override
+            public void run(final Action action, Object data) throws Exception {
+                stage.whenComplete(new BiConsumer<Object, Throwable>() {
+                    @Override
+                    public void accept(Object value, Throwable throwable) {
+                        if (throwable == null) {
+                            action.resolve(value);
+                        } else {
+                            action.reject(PromiseException.toReason(throwable));
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Returns CompletableFuture that is completed with the result of this promise.
+     * 
+     * If rejected, the future is completed exceptionally with the reason,
+     * or with PromiseException that holds the reason if the reason is not a Throwable.
+     * If this promise has not been run yet, it is run as the first step of a new chain.
+     * 
+     * @return
+     */
+    public CompletableFuture<Object> toCompletableFuture() {
+        if (mStatus == Status.PENDING) {
+            return SyncPromise.resolve().then(SyncPromise.this).toCompletableFuture();
+        }
+
+        final CompletableFuture<Object> future = new CompletableFuture<Object>();
+        if (mStatus == Status.FULFILLED) {
+            future.complete(mResult);
+        } else {
+            future.completeExceptionally(PromiseException.toThrowable(mResult));
+        }
+        return future;
+    }
+
     /**
      * Promise.all waits for all fulfillments (or the first rejection).
      * 
@@ -332,11 +576,11 @@ public class SyncPromise implements Thennable {
      * For example,
      * if you pass in four promises that resolve after a sleep and one promise
      * that rejects immediately, then Promise.all will reject immediately.
+     * The elements are observed in the order they complete, so the rejection
+     * returned is the first one in time, not the first one in the arguments.
      * 
-     * Since each promise is executed on its own worker thread, the
-     * execution of the promise itself continues on the worker thread.
-     * But, once reject received, Promise.all will move on to then when it receives
-     * reject even if the worker thread is moving
+     * Once rejected, the other promises are cancelled and
+     * the worker threads running them are interrupted.
      * 
      * If fulfilled, all results are returned as "List<Object>" at
      * {@link Func#run(Action, List<Object>)} method.
@@ -349,6 +593,31 @@ public class SyncPromise implements Thennable {
      * 
      */
     public static SyncPromise all(Thennable... promises) {
+        PromiseScheduler scheduler = null;
+        return allOn(scheduler, promises);
+    }
+
+    /**
+     * Promise.all on the specified executor.
+     * The executor is NOT shut down automatically, so it can be reused for the following calls.
+     * 
+     * @param executor
+     * @param promises
+     * @return
+     */
+    public static SyncPromise all(ExecutorService executor, Thennable... promises) {
+        return allOn(executor == null ? null : PromiseScheduler.of(executor), promises);
+    }
+
+    /**
+     * Promise.all on the specified scheduler.
+     * For example, if you specify {@link PromiseScheduler#virtual()}, each promise is executed on its own virtual thread.
+     * 
+     * @param scheduler
+     * @param promises
+     * @return
+     */
+    public static SyncPromise allOn(PromiseScheduler scheduler, Thennable... promises) {
 
         if (promises == null || promises.length == 0) {
             // If an empty iterable is passed, then this method returns an
@@ -356,65 +625,7 @@ public class SyncPromise implements Thennable {
             return SyncPromise.resolve();
         }
 
-        final ExecutorService executor = Executors.newCachedThreadPool();
-
-        final List<Future<SyncPromise>> futureList = new ArrayList<Future<SyncPromise>>();
-
-        final List<Object> resultList = new ArrayList<Object>();
-
-        try {// Make sure executor.shutdown is called at "try-finally".
-
-            for (Thennable promise : promises) {
-
-                final Callable<SyncPromise> callable = new Callable<SyncPromise>() {
-
-                    @Override
-                    public SyncPromise call() throws Exception {
-                        SyncPromise result = SyncPromise.resolve().then(promise);
-                        if (result.getStatus() == Status.REJECTED) {
-                            // throw exception to interrupt
-                            throw new PromiseException(result.getValue());
-                        }
-                        return result;
-                    }
-                };
-
-                final Future<SyncPromise> future = executor.submit(callable);
-                futureList.add(future);
-            }
-        } finally {
-            executor.shutdown();
-        }
-
-        boolean rejected = false;
-        Object rejectedError = null;
-
-        for (Future<SyncPromise> f : futureList) {
-            try {
-                SyncPromise result = f.get();
-                resultList.add(result.getValue());
-            } catch (InterruptedException e) {
-                // exit loop
-                break;
-            } catch (ExecutionException e) {
-
-                final Throwable cause = e.getCause();
-
-                if (cause instanceof PromiseException) {
-                    PromiseException pe = (PromiseException) cause;
-                    rejectedError = pe.getValue();
-                    rejected = true;
-                }
-                // exit loop
-                break;
-            }
-        }
-
-        if (rejected) {
-            return SyncPromise.reject(rejectedError);
-        } else {
-            return SyncPromise.resolve(resultList);
-        }
+        return combine(Combination.ALL, scheduler, promises);
     }
 
     /**
@@ -425,10 +636,8 @@ public class SyncPromise implements Thennable {
      * if you pass in four funcs that resolve after a sleep and one func
      * that rejects immediately, then Promise.all will reject immediately.
      * 
-     * Since each func is executed on its own worker thread, the
-     * execution of the func itself continues on the worker thread.
-     * But, once reject received, Promise.all will move on to then when it receives
-     * reject even if the worker thread is moving
+     * Once rejected, the other funcs are cancelled and
+     * the worker threads running them are interrupted.
      * 
      * If fulfilled, all results are returned as "List<Object>" at
      * {@link Func#run(Action, List<Object>)} method.
@@ -441,6 +650,28 @@ public class SyncPromise implements Thennable {
      * 
      */
     public static SyncPromise all(Func... funcs) {
+        return allOn(null, funcs);
+    }
+
+    /**
+     * Promise.all on the specified executor.
+     * 
+     * @param executor
+     * @param funcs
+     * @return
+     */
+    public static SyncPromise all(ExecutorService executor, Func... funcs) {
+        return allOn(executor == null ? null : PromiseScheduler.of(executor), funcs);
+    }
+
+    /**
+     * Promise.all on the specified scheduler.
+     * 
+     * @param scheduler
+     * @param funcs
+     * @return
+     */
+    public static SyncPromise allOn(PromiseScheduler scheduler, Func... funcs) {
         if (funcs == null || funcs.length == 0) {
             return SyncPromise.resolve();
         }
@@ -452,7 +683,333 @@ public class SyncPromise implements Thennable {
                 promiseList.add(promise);
             }
         }
-        return SyncPromise.all(promiseList.toArray(new SyncPromise[0]));
+        return SyncPromise.allOn(scheduler, promiseList.toArray(new SyncPromise[0]));
+    }
+
+    /**
+     * Promise.race is settled with the first element to be settled,
+     * whether it is fulfilled or rejected.
+     * 
+     * Once settled, the other promises are cancelled and
+     * the worker threads running them are interrupted.
+     * 
+     * If an empty iterable is passed, returns an already resolved promise.
+     * 
+     * @param promises
+     * @return
+     */
+    public static SyncPromise race(Thennable... promises) {
+        return race((PromiseScheduler) null, promises);
+    }
+
+    public static SyncPromise race(PromiseScheduler scheduler, Thennable... promises) {
+        if (promises == null || promises.length == 0) {
+            return SyncPromise.resolve();
+        }
+        return combine(Combination.RACE, scheduler, promises);
+    }
+
+    public static SyncPromise race(Func... funcs) {
+        return race((PromiseScheduler) null, funcs);
+    }
+
+    public static SyncPromise race(PromiseScheduler scheduler, Func... funcs) {
+        if (funcs == null || funcs.length == 0) {
+            return SyncPromise.resolve();
+        }
+        return race(scheduler, toPromises(funcs));
+    }
+
+    /**
+     * Promise.any is fulfilled with the first element to be fulfilled.
+     * 
+     * Once fulfilled, the other promises are cancelled.
+     * 
+     * If all of the elements are rejected, Promise.any is rejected with
+     * {@link PromiseAggregateException} that holds all the reasons.
+     * 
+     * @param promises
+     * @return
+     */
+    public static SyncPromise any(Thennable... promises) {
+        return any((PromiseScheduler) null, promises);
+    }
+
+    public static SyncPromise any(PromiseScheduler scheduler, Thennable... promises) {
+        if (promises == null || promises.length == 0) {
+            return SyncPromise.reject(new PromiseAggregateException(new ArrayList<Object>()));
+        }
+        return combine(Combination.ANY, scheduler, promises);
+    }
+
+    public static SyncPromise any(Func... funcs) {
+        return any((PromiseScheduler) null, funcs);
+    }
+
+    public static SyncPromise any(PromiseScheduler scheduler, Func... funcs) {
+        if (funcs == null || funcs.length == 0) {
+            return SyncPromise.reject(new PromiseAggregateException(new ArrayList<Object>()));
+        }
+        return any(scheduler, toPromises(funcs));
+    }
+
+    /**
+     * Promise.allSettled waits for all the elements to be settled and
+     * is always fulfilled.
+     * 
+     * The outcomes are returned as "List<SettledResult>" in the order of the
+     * arguments.
+     * 
+     * @param promises
+     * @return
+     */
+    public static SyncPromise allSettled(Thennable... promises) {
+        return allSettled((PromiseScheduler) null, promises);
+    }
+
+    public static SyncPromise allSettled(PromiseScheduler scheduler, Thennable... promises) {
+        if (promises == null || promises.length == 0) {
+            return SyncPromise.resolve();
+        }
+        return combine(Combination.ALL_SETTLED, scheduler, promises);
+    }
+
+    public static SyncPromise allSettled(Func... funcs) {
+        return allSettled((PromiseScheduler) null, funcs);
+    }
+
+    public static SyncPromise allSettled(PromiseScheduler scheduler, Func... funcs) {
+        if (funcs == null || funcs.length == 0) {
+            return SyncPromise.resolve();
+        }
+        return allSettled(scheduler, toPromises(funcs));
+    }
+
+    private static SyncPromise[] toPromises(Func[] funcs) {
+        final SyncPromise[] promises = new SyncPromise[funcs.length];
+        for (int i = 0; i < funcs.length; i++) {
+            promises[i] = new SyncPromise(funcs[i]);
+        }
+        return promises;
+    }
+
+    private enum Combination {
+        ALL, RACE, ANY, ALL_SETTLED
+    }
+
+    /**
+     * Run each promise on its own task and take the outcomes in the order of completion.
+     * 
+     * The caller does not wait for a task that no thread has started, it runs the task itself.
+     * So a combination nested in an element of another combination finishes even if all the threads of the
+     * scheduler are taken by the callers.
+     */
+    private static SyncPromise combine(Combination combination, PromiseScheduler scheduler, Thennable[] promises) {
+
+        if (scheduler == null) {
+            scheduler = PromiseScheduler.getDefault();
+        }
+
+        final BlockingQueue<SettlingTask> completionQueue = new LinkedBlockingQueue<SettlingTask>();
+        final Caller caller = new Caller();
+        final SettlingTask[] tasks = new SettlingTask[promises.length];
+
+        for (int i = 0; i < promises.length; i++) {
+            tasks[i] = new SettlingTask(i, promises[i], combination, caller, completionQueue);
+        }
+
+        // The caller blocks until the outcome is decided anyway, so it runs the last element itself
+        final int callerIndex = promises.length - 1;
+        for (int i = 0; i < callerIndex; i++) {
+            scheduler.execute(tasks[i]);
+        }
+
+        final Object[] results = new Object[promises.length];
+
+        try {
+            int remaining = promises.length;
+
+            // From the last element, since the scheduler starts the tasks from the first
+            for (int i = callerIndex; i >= 0; i--) {
+
+                // Set before the poll below, so that a decisive outcome put on the queue after the poll stops this task
+                caller.begin(tasks[i]);
+
+                SettlingTask task;
+                while ((task = completionQueue.poll()) != null) {
+                    remaining--;
+                    final SyncPromise outcome = takeOutcome(combination, task, results);
+                    if (outcome != null) {
+                        return outcome;
+                    }
+                }
+
+                // No-op if already started by the scheduler
+                tasks[i].run();
+                caller.end();
+            }
+
+            for (; remaining > 0; remaining--) {
+                final SyncPromise outcome = takeOutcome(combination, completionQueue.take(), results);
+                if (outcome != null) {
+                    return outcome;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return SyncPromise.reject(e);
+        } finally {
+            caller.end();
+            // The outcome is decided, so stop the tasks still running or waiting to run
+            for (SettlingTask task : tasks) {
+                task.cancel(true);
+            }
+        }
+
+        final List<Object> resultList = new ArrayList<Object>(Arrays.asList(results));
+        if (combination == Combination.ANY) {
+            return SyncPromise.reject(new PromiseAggregateException(resultList));
+        }
+        return SyncPromise.resolve(resultList);
+    }
+
+    /**
+     * Store the outcome of the task in the results
+     * 
+     * @return the promise with the outcome of the combination if decided by the task, otherwise null
+     */
+    private static SyncPromise takeOutcome(Combination combination, SettlingTask task, Object[] results) {
+        final Status status = task.getOutcomeStatus();
+        final Object value = task.getOutcomeValue();
+
+        switch (combination) {
+        case ALL:
+            if (status == Status.REJECTED) {
+                // Move forward with the first rejection in time, not in the order of the arguments
+                return SyncPromise.reject(value);
+            }
+            results[task.mIndex] = value;
+            break;
+        case RACE:
+            return status == Status.FULFILLED ? SyncPromise.resolve(value) : SyncPromise.reject(value);
+        case ANY:
+            if (status == Status.FULFILLED) {
+                return SyncPromise.resolve(value);
+            }
+            results[task.mIndex] = value;
+            break;
+        case ALL_SETTLED:
+            results[task.mIndex] = new SettledResult(status, value);
+            break;
+        default:
+            break;
+        }
+        return null;
+    }
+
+    /**
+     * The thread calling the combination and the element it is running
+     */
+    private static final class Caller {
+
+        private final Thread mThread = Thread.currentThread();
+        private SettlingTask mTask;
+        // True while this thread has the interrupt sent by stop
+        private boolean mInterrupted;
+
+        synchronized void begin(SettlingTask task) {
+            mTask = task;
+        }
+
+        /**
+         * Finish running the element, clearing only the interrupt sent by stop
+         */
+        synchronized void end() {
+            mTask = null;
+            if (mInterrupted) {
+                mInterrupted = false;
+                Thread.interrupted();
+            }
+        }
+
+        /**
+         * Cancel the element the caller is running and interrupt the caller to stop its func
+         */
+        synchronized void stop(SettlingTask decidingTask) {
+            if (mTask == null || mTask == decidingTask || !mTask.cancel(false)) {
+                return;
+            }
+            if (!mThread.isInterrupted()) {
+                // Otherwise interrupted from outside, and the interrupt is kept for the caller
+                mInterrupted = true;
+                mThread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Task that runs a promise and puts itself on the completion queue when done
+     */
+    private static final class SettlingTask extends FutureTask<SyncPromise> {
+
+        private final int mIndex;
+        private final Combination mCombination;
+        private final Caller mCaller;
+        private final BlockingQueue<SettlingTask> mCompletionQueue;
+
+        SettlingTask(int index, final Thennable promise, Combination combination, Caller caller,
+                BlockingQueue<SettlingTask> completionQueue) {
+            super(new Callable<SyncPromise>() {
+                @Override
+                public SyncPromise call() throws Exception {
+                    return SyncPromise.resolve().then(promise);
+                }
+            });
+            mIndex = index;
+            mCombination = combination;
+            mCaller = caller;
+            mCompletionQueue = completionQueue;
+        }
+
+        @Override
+        protected void done() {
+            mCompletionQueue.add(this);
+            if (!isCancelled() && isDecisive()) {
+                // The caller cannot see the outcome while it runs an element, so stop that element
+                mCaller.stop(this);
+            }
+        }
+
+        private boolean isDecisive() {
+            switch (mCombination) {
+            case ALL:
+                return getOutcomeStatus() == Status.REJECTED;
+            case RACE:
+                return true;
+            case ANY:
+                return getOutcomeStatus() == Status.FULFILLED;
+            default:
+                return false;
+            }
+        }
+
+        Status getOutcomeStatus() {
+            try {
+                return get().getStatus();
+            } catch (InterruptedException | ExecutionException | CancellationException e) {
+                return Status.REJECTED;
+            }
+        }
+
+        Object getOutcomeValue() {
+            try {
+                return get().getValue();
+            } catch (ExecutionException e) {
+                return e.getCause();
+            } catch (InterruptedException | CancellationException e) {
+                return e;
+            }
+        }
     }
 
     public static void sleep(long sleepMillis) {
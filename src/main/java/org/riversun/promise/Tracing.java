@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2018-2019 Tom Misawa(riversun.org@gmail.com)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.promise;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holder of the installed PromiseTracer
+ * 
+ * Call sites check {@link #isEnabled()} before building the detail of the event.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+final class Tracing {
+
+    // Read once at class initialization.
+    // If tracing is disabled by the property, isEnabled() is folded into false and the guarded code is dropped by the JIT.
+    static final boolean AVAILABLE = !Boolean.getBoolean("org.riversun.promise.trace.disabled");
+
+    private static final AtomicLong sIdCounter = new AtomicLong();
+
+    private static volatile PromiseTracer sTracer;
+
+    private Tracing() {
+    }
+
+    /**
+     * Returns true if a tracer is installed.
+     * Tracers can be installed at any time, so this is a volatile read of the tracer unless disabled by the property.
+     */
+    static boolean isEnabled() {
+        return AVAILABLE && sTracer != null;
+    }
+
+    static PromiseTracer getTracer() {
+        return sTracer;
+    }
+
+    static void setTracer(PromiseTracer tracer) {
+        sTracer = tracer;
+    }
+
+    static long nextId() {
+        return sIdCounter.incrementAndGet();
+    }
+
+    static void trace(long promiseId, String promiseName, PromiseTracer.Phase phase, Object detail) {
+        final PromiseTracer tracer = sTracer;
+        if (tracer != null) {
+            tracer.trace(promiseId, promiseName, phase, Thread.currentThread(), detail);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2018-2019 Tom Misawa(riversun.org@gmail.com)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.promise;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Promise.all for the typed promises, collecting the values into an array of the element type without boxing.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+final class TypedAll {
+
+    private TypedAll() {
+    }
+
+    /**
+     * Run all the chains at the same time and collect the values into the results in the order of the arguments.
+     * Rejected with the first rejection reason if any of the chains are rejected.
+     * 
+     * @param scheduler
+     * @param promises
+     * @param results
+     *            array of the element type with the same length as the promises
+     * @return
+     */
+    static <R> TypedPromise<R> all(PromiseScheduler scheduler, final PrimitiveChain<?>[] promises, final R results) {
+        return TypedPromise.resolve((Void) null, scheduler).then(new TypedFunc<Void, R>() {
+            @Override
+            public void run(TypedAction<R> action, Void data) {
+
+                if (promises == null || promises.length == 0) {
+                    action.resolve(results);
+                    return;
+                }
+
+                final Collector<R> collector = new Collector<R>(action, results, promises.length);
+                for (int i = 0; i < promises.length; i++) {
+                    promises[i].link(new CollectorNode<R>(collector, promises[i], i)).startChain();
+                }
+            }
+        });
+    }
+
+    /**
+     * Settles the combined promise exactly once
+     */
+    private static final class Collector<R> {
+
+        private final TypedAction<R> mAction;
+        private final R mResults;
+        private final AtomicInteger mRemainingCounter;
+        private final AtomicBoolean mSettled = new AtomicBoolean(false);
+
+        Collector(TypedAction<R> action, R results, int size) {
+            mAction = action;
+            mResults = results;
+            mRemainingCounter = new AtomicInteger(size);
+        }
+
+        void onFulfilled() {
+            // The counter publishes the values written by the other chains
+            if (mRemainingCounter.decrementAndGet() == 0 && mSettled.compareAndSet(false, true)) {
+                mAction.resolve(mResults);
+            }
+        }
+
+        void onRejected(Object reason) {
+            if (mSettled.compareAndSet(false, true)) {
+                mAction.reject(reason);
+            }
+        }
+    }
+
+    /**
+     * The last node of each chain, which stores the value into the results
+     */
+    private static final class CollectorNode<R> extends TypedChain<Void> {
+
+        private final Collector<R> mCollector;
+        private final PrimitiveChain<?> mElement;
+        private final int mIndex;
+
+        CollectorNode(final Collector<R> collector, PrimitiveChain<?> element, int index) {
+            mCollector = collector;
+            mElement = element;
+            mIndex = index;
+            setOnRejected(new RejectedFunc<Void>() {
+                @Override
+                public void run(Void action, Object reason) {
+                    rejectNode(reason);
+                    collector.onRejected(reason);
+                }
+            });
+        }
+
+        @Override
+        boolean hasOnFulfilled() {
+            return true;
+        }
+
+        @Override
+        void receiveValue(TypedChain<?> prevNode) {
+        }
+
+        @Override
+        void runOnFulfilled(TypedChain<?> prevNode) {
+            mElement.storeValue(mCollector.mResults, mIndex);
+            if (beginSettle()) {
+                endSettle(Status.FULFILLED, null);
+            }
+            mCollector.onFulfilled();
+        }
+
+        @Override
+        Void createAction() {
+            // The node settles itself
+            return null;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2018-2019 Tom Misawa(riversun.org@gmail.com)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.promise;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Common part of the typed promises(TypedPromise, LongPromise, IntPromise and DoublePromise).
+ * 
+ * Each node of the chain holds the value by its own type, so the value is
+ * carried to the next node without boxing.
+ * 
+ * The chain is run in a loop. If a func settles the node before returning, the loop
+ * moves on to the next node. If a func settles the node later on another thread,
+ * the loop continues on that thread.
+ * 
+ * @param <A>
+ *            type of action passed to funcs
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+abstract class TypedChain<A> {
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<TypedChain> SETTLED = AtomicIntegerFieldUpdater.newUpdater(TypedChain.class, "mSettled");
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<TypedChain> HANDOFF = AtomicIntegerFieldUpdater.newUpdater(TypedChain.class, "mHandoff");
+
+    // Nobody has finished yet
+    private static final int HANDOFF_NONE = 0;
+    // The func returned before the node was settled, so whoever settles the node continues the chain
+    private static final int HANDOFF_TO_SETTLER = 1;
+    // The node was settled before the func returned, so the loop continues the chain
+    private static final int HANDOFF_TO_LOOP = 2;
+
+    private PromiseScheduler mScheduler;
+    private TypedChain<?> mFounder;
+    private TypedChain<?> mNext;
+
+    private RejectedFunc<A> mOnRejected;
+
+    private volatile Status mStatus = Status.PENDING;
+    private Object mReason;
+
+    private volatile int mSettled = 0;
+    private volatile int mHandoff = HANDOFF_NONE;
+
+    TypedChain() {
+    }
+
+    TypedChain(PromiseScheduler scheduler) {
+        mScheduler = scheduler;
+    }
+
+    /**
+     * Returns true if the func for fulfilled is set
+     */
+    abstract boolean hasOnFulfilled();
+
+    /**
+     * Copy the value of the previous node to this node
+     */
+    abstract void receiveValue(TypedChain<?> prevNode);
+
+    /**
+     * Run the func for fulfilled with the value of the previous node
+     */
+    abstract void runOnFulfilled(TypedChain<?> prevNode) throws Exception;
+
+    /**
+     * Create the action which settles this node
+     */
+    abstract A createAction();
+
+    void setOnRejected(RejectedFunc<A> onRejected) {
+        mOnRejected = onRejected;
+    }
+
+    /**
+     * Link the next node to this node
+     */
+    <N extends TypedChain<?>> N link(N nextNode) {
+
+        // Decide scheduler at first access
+        if (mScheduler == null) {
+            mScheduler = PromiseScheduler.getDefault();
+        }
+
+        // Remember "ancestor" node at first access
+        if (mFounder == null) {
+            mFounder = this;
+        }
+
+        final TypedChain<?> node = nextNode;
+        node.mScheduler = mScheduler;
+        node.mFounder = mFounder;
+        mNext = node;
+        return nextNode;
+    }
+
+    /**
+     * Start the chain from the founder on the scheduler
+     */
+    void startChain() {
+
+        final TypedChain<?> founder = mFounder;
+
+        if (founder == null || founder.mNext == null) {
+            // nothing to run
+            return;
+        }
+
+        founder.mScheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                proceed(founder);
+            }
+        });
+    }
+
+    /**
+     * Run nodes after the settled node one by one
+     */
+    private static void proceed(TypedChain<?> settledNode) {
+        TypedChain<?> crrNode = settledNode;
+        while (crrNode.mNext != null) {
+            final TypedChain<?> nextNode = crrNode.mNext;
+            if (!nextNode.runFrom(crrNode)) {
+                // The node will be settled later, and the settler continues the chain
+                return;
+            }
+            crrNode = nextNode;
+        }
+    }
+
+    /**
+     * Run this node with the result of the previous node
+     * 
+     * @return true if this node is settled synchronously
+     */
+    private boolean runFrom(TypedChain<?> prevNode) {
+
+        final boolean fulfilled = prevNode.mStatus == Status.FULFILLED;
+
+        if (fulfilled ? !hasOnFulfilled() : mOnRejected == null) {
+            // Pass through if the func is not explicitly set
+            mSettled = 1;
+            if (fulfilled) {
+                receiveValue(prevNode);
+            }
+            mReason = prevNode.mReason;
+            mStatus = prevNode.mStatus;
+            return true;
+        }
+
+        try {
+            if (fulfilled) {
+                runOnFulfilled(prevNode);
+            } else {
+                mOnRejected.run(createAction(), prevNode.mReason);
+            }
+        } catch (Exception e) {
+            // Exception is treated as reject
+            rejectNode(e);
+        }
+
+        return !HANDOFF.compareAndSet(this, HANDOFF_NONE, HANDOFF_TO_SETTLER);
+    }
+
+    /**
+     * Begin to settle this node. Only the first call returns true.
+     * The caller writes the value of this node and then calls {@link #endSettle}.
+     */
+    final boolean beginSettle() {
+        return SETTLED.compareAndSet(this, 0, 1);
+    }
+
+    /**
+     * Reject this node unless it is already settled
+     */
+    final void rejectNode(Object reason) {
+        if (beginSettle()) {
+            endSettle(Status.REJECTED, reason);
+        }
+    }
+
+    final void endSettle(Status status, Object reason) {
+        mReason = reason;
+        mStatus = status;
+        if (!HANDOFF.compareAndSet(this, HANDOFF_NONE, HANDOFF_TO_LOOP)) {
+            // The func has already returned, so continue the chain here
+            proceed(this);
+        }
+    }
+
+    /**
+     * Settle the node created by "resolve" or "reject"
+     */
+    final void settleInitially(Status status, Object reason) {
+        mSettled = 1;
+        mReason = reason;
+        mStatus = status;
+    }
+
+    public Status getStatus() {
+        return mStatus;
+    }
+
+    /**
+     * Returns the rejection reason if this node is rejected
+     * 
+     * @return
+     */
+    public Object getReason() {
+        return mReason;
+    }
+}
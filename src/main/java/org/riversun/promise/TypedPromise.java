@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2018-2019 Tom Misawa(riversun.org@gmail.com)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.promise;
+
+/**
+ * TypedPromise is the typed version of {@link Promise}.
+ * 
+ * The type of the value is checked at compile time, so no cast is needed in funcs.
+ * 
+ * Example Code
+ * <code>
+    TypedPromise.resolve("foo")
+        .then((TypedAction&lt;Integer&gt; action, String data) -> {
+            action.resolve(data.length());
+        })
+        .then((TypedAction&lt;Void&gt; action, Integer data) -> {
+            System.out.println(data);
+            action.resolve(null);
+        })
+        .start();
+ *</code>
+ * 
+ * @param <T>
+ *            type of the value
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+public class TypedPromise<T> extends TypedChain<TypedAction<T>> {
+
+    private TypedFunc<Object, T> mOnFulfilled;
+    private T mValue;
+
+    private TypedPromise() {
+    }
+
+    private TypedPromise(PromiseScheduler scheduler) {
+        super(scheduler);
+    }
+
+    /**
+     * Specify the operation to be performed after the promise processing.
+     * 
+     * @param onFulfilled
+     * @return
+     */
+    public <O> TypedPromise<O> then(TypedFunc<? super T, O> onFulfilled) {
+        return then(onFulfilled, null);
+    }
+
+    /**
+     * Specify the operation to be performed after the promise processing.
+     * 
+     * @param onFulfilled
+     * @param onRejected
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <O> TypedPromise<O> then(TypedFunc<? super T, O> onFulfilled, RejectedFunc<TypedAction<O>> onRejected) {
+        final TypedPromise<O> nextPromise = new TypedPromise<O>();
+        nextPromise.mOnFulfilled = (TypedFunc<Object, O>) onFulfilled;
+        nextPromise.setOnRejected(onRejected);
+        return link(nextPromise);
+    }
+
+    /**
+     * Start the chain
+     * 
+     * @return
+     */
+    public TypedPromise<T> start() {
+        startChain();
+        return this;
+    }
+
+    /**
+     * Returns the fulfillment value if this promise is fulfilled
+     * 
+     * @return
+     */
+    public T getValue() {
+        return mValue;
+    }
+
+    @Override
+    boolean hasOnFulfilled() {
+        return mOnFulfilled != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    void receiveValue(TypedChain<?> prevNode) {
+        mValue = (T) ((TypedPromise<?>) prevNode).mValue;
+    }
+
+    @Override
+    void runOnFulfilled(TypedChain<?> prevNode) throws Exception {
+        mOnFulfilled.run(createAction(), ((TypedPromise<?>) prevNode).mValue);
+    }
+
+    @Override
+    TypedAction<T> createAction() {
+        return new TypedAction<T>() {
+            @Override
+            public void resolve(T result) {
+                if (beginSettle()) {
+                    mValue = result;
+                    endSettle(Status.FULFILLED, null);
+                }
+            }
+
+            @Override
+            public void reject(Object reason) {
+                rejectNode(reason);
+            }
+
+            @Override
+            public void reject() {
+                reject(null);
+            }
+        };
+    }
+
+    /**
+     * Returns a TypedPromise object that is fulfilled with a given data and specify scheduler
+     * 
+     * @param data
+     * @param scheduler
+     * @return
+     */
+    public static <T> TypedPromise<T> resolve(T data, PromiseScheduler scheduler) {
+        final TypedPromise<T> promise = new TypedPromise<T>(scheduler);
+        promise.mValue = data;
+        promise.settleInitially(Status.FULFILLED, null);
+        return promise;
+    }
+
+    /**
+     * Returns a TypedPromise object that is fulfilled with a given data
+     * 
+     * @param data
+     * @return
+     */
+    public static <T> TypedPromise<T> resolve(T data) {
+        return resolve(data, null);
+    }
+
+    /**
+     * Returns a TypedPromise object that is rejected with a given reason.
+     * 
+     * @param reason
+     * @return
+     */
+    public static <T> TypedPromise<T> reject(Object reason) {
+        final TypedPromise<T> promise = new TypedPromise<T>();
+        promise.settleInitially(Status.REJECTED, reason);
+        return promise;
+    }
+}
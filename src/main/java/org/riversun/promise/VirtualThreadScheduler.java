@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2018-2019 Tom Misawa(riversun.org@gmail.com)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.promise;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Scheduler that runs each task on its own virtual thread.
+ * 
+ * Since virtual threads are cheap, a func may block on I/O without occupying an OS thread.
+ * 
+ * Virtual threads are available on Java 21 or later. They are looked up reflectively,
+ * so this library still runs on Java 8.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+class VirtualThreadScheduler implements PromiseScheduler {
+
+    private static volatile VirtualThreadScheduler sInstance;
+
+    private final ExecutorService mExecutor;
+
+    private VirtualThreadScheduler(ExecutorService executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Returns the shared virtual thread scheduler
+     * 
+     * @throws UnsupportedOperationException
+     *             if virtual threads are not available on this JVM
+     */
+    static VirtualThreadScheduler getInstance() {
+        VirtualThreadScheduler instance = sInstance;
+        if (instance == null) {
+            synchronized (VirtualThreadScheduler.class) {
+                instance = sInstance;
+                if (instance == null) {
+                    instance = new VirtualThreadScheduler(createExecutor("promise-virtual-"));
+                    sInstance = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Returns true if virtual threads are available on this JVM
+     */
+    static boolean isAvailable() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Create the executor equivalent to the following code on Java 21.
+     * 
+     * <code>
+     * Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(threadName, 1).factory());
+     * </code>
+     */
+    private static ExecutorService createExecutor(String threadName) {
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            final Method nameMethod = builderClass.getMethod("name", String.class, long.class);
+            final Method factoryMethod = builderClass.getMethod("factory");
+
+            final Object namedBuilder = nameMethod.invoke(builder, threadName, 1L);
+            final ThreadFactory factory = (ThreadFactory) factoryMethod.invoke(namedBuilder);
+
+            final Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newThreadPerTaskExecutor.invoke(null, factory);
+
+        } catch (NoSuchMethodException | ClassNotFoundException e) {
+            throw new UnsupportedOperationException("Virtual threads are not available on Java " + System.getProperty("java.version")
+                    + ", Java 21 or later is required.", e);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Failed to create virtual thread executor", e);
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        mExecutor.execute(task);
+    }
+
+    @Override
+    public boolean isShared() {
+        return true;
+    }
+
+    @Override
+    public void shutdown() {
+        // Shared by all chains, so it is not shut down at the end of each chain
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualThreadScheduler";
+    }
+}
@@ -12,7 +12,12 @@ import org.junit.runners.Suite.SuiteClasses;
 @RunWith(Suite.class)
 @SuiteClasses({
         TestPromiseSync.class, TestPromiseAsync.class,
-        TestPromiseAllSync.class, TestPromiseAllAsync.class
+        TestPromiseAllSync.class, TestPromiseAllAsync.class,
+        TestPromiseScheduler.class, TestPromiseTracer.class,
+        TestTypedPromise.class, TestCancellationToken.class,
+        TestPromiseTimeout.class, TestPromiseBridge.class,
+        TestPromiseFlow.class, TestPromiseBatcher.class, TestPromiseCache.class, TestPromiseRetry.class, TestPromiseMetrics.class,
+        TestPromisePipeline.class, TestPromiseAllocation.class
 })
 public class AppTest {
 
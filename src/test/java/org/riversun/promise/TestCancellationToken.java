@@ -0,0 +1,325 @@
+package org.riversun.promise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests for CancellationToken<br>
+ * 
+ * Tom Misawa (riversun.org@gmail.com)
+ */
+public class TestCancellationToken {
+
+    /**
+     * Make sure that the running step is interrupted and the rest of the steps are skipped
+     */
+    @Test
+    public void test_cancel_interrupts_running_step() throws InterruptedException {
+
+        final CancellationToken token = new CancellationToken();
+        final List<String> results = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        Promise.resolve()
+                .withCancellationToken(token)
+                .then((action, data) -> {
+                    started.countDown();
+                    try {
+                        Thread.sleep(10000);
+                        action.resolve();
+                    } catch (InterruptedException e) {
+                        results.add("interrupted");
+                        action.reject(e);
+                    }
+                })
+                .then((action, data) -> {
+                    results.add("skipped step is run");
+                    action.resolve();
+                })
+                .then(null, (action, data) -> {
+                    results.add(data.getClass().getSimpleName());
+                    action.resolve();
+                    latch.countDown();
+                })
+                .start();
+
+        started.await();
+        assertTrue(token.cancel());
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        Thread.sleep(100);
+        assertTrue(results.contains("interrupted"));
+        assertTrue(results.contains("CancellationException"));
+        assertEquals(2, results.size());
+    }
+
+    /**
+     * Make sure that the chain is rejected without waiting for the step resolved on another thread
+     */
+    @Test
+    public void test_cancel_does_not_wait_for_pending_step() throws InterruptedException {
+
+        final CancellationToken token = new CancellationToken();
+        final List<Object> results = new ArrayList<Object>();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        Promise.resolve()
+                .withCancellationToken(token)
+                .then((action, data) -> {
+                    // Never resolved
+                })
+                .then(null, (action, data) -> {
+                    results.add(data);
+                    action.resolve();
+                    latch.countDown();
+                })
+                .start();
+
+        Thread.sleep(100);
+        token.cancel("my reason");
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("my reason"), results);
+    }
+
+    /**
+     * Make sure that all the steps are skipped if cancelled before start
+     */
+    @Test
+    public void test_cancel_before_start() throws InterruptedException {
+
+        final CancellationToken token = new CancellationToken();
+        token.cancel();
+
+        final List<Object> results = new ArrayList<Object>();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        Promise.resolve()
+                .withCancellationToken(token)
+                .then((action, data) -> {
+                    results.add("skipped step is run");
+                    action.resolve();
+                })
+                .then(null, (action, data) -> {
+                    results.add(data);
+                    action.resolve();
+                    latch.countDown();
+                })
+                .start();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, results.size());
+        assertTrue(results.get(0) instanceof CancellationException);
+        assertSame(token.getReason(), results.get(0));
+    }
+
+    /**
+     * Make sure that the token is passed to func via action
+     */
+    @Test
+    public void test_token_from_action() throws InterruptedException {
+
+        final CancellationToken token = new CancellationToken();
+        final List<Object> results = new ArrayList<Object>();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        Promise.resolve()
+                .withCancellationToken(token)
+                .then((action, data) -> {
+                    results.add(action.getCancellationToken());
+                    // Cancel from the func itself
+                    action.getCancellationToken().cancel();
+                    action.resolve();
+                })
+                .then((action, data) -> {
+                    results.add("skipped step is run");
+                    action.resolve();
+                })
+                .then(null, (action, data) -> {
+                    results.add(data.getClass().getSimpleName());
+                    action.resolve();
+                    latch.countDown();
+                })
+                .start();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(token, "CancellationException"), results);
+    }
+
+    /**
+     * Make sure that action returns null without the token
+     */
+    @Test
+    public void test_no_token() throws InterruptedException {
+
+        final List<Object> results = new ArrayList<Object>();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        Promise.resolve()
+                .then((action, data) -> {
+                    results.add(action.getCancellationToken());
+                    action.resolve();
+                    latch.countDown();
+                })
+                .start();
+
+        latch.await();
+        assertEquals(1, results.size());
+        assertNull(results.get(0));
+    }
+
+    /**
+     * Make sure that cancelling the chain of Promise.all cancels the children
+     */
+    @Test
+    public void test_cancel_promise_all() throws InterruptedException {
+
+        final CancellationToken token = new CancellationToken();
+        final CountDownLatch interrupted = new CountDownLatch(2);
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        final Func sleeper = (action, data) -> {
+            try {
+                Thread.sleep(10000);
+                action.resolve();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                action.reject(e);
+            }
+        };
+
+        Promise.all(sleeper, sleeper)
+                .withCancellationToken(token)
+                .then(null, (action, data) -> {
+                    action.resolve();
+                    latch.countDown();
+                })
+                .start();
+
+        Thread.sleep(100);
+        token.cancel();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Make sure that SyncPromise returns from the waiting step on cancel
+     */
+    @Test
+    public void test_cancel_sync_promise() {
+
+        final CancellationToken token = new CancellationToken();
+        final List<Object> results = new ArrayList<Object>();
+
+        final long startTime = System.currentTimeMillis();
+
+        SyncPromise.resolve()
+                .withCancellationToken(token)
+                .then((action, data) -> {
+                    new Thread(() -> {
+                        Promise.sleep(100);
+                        token.cancel("my reason");
+                        // Too late
+                        Promise.sleep(100);
+                        action.resolve("resolved");
+                    }).start();
+                })
+                .then((action, data) -> {
+                    results.add("skipped step is run");
+                    action.resolve();
+                })
+                .then(null, (action, data) -> {
+                    results.add(data);
+                    action.resolve();
+                });
+
+        assertTrue(System.currentTimeMillis() - startTime < 5000);
+        assertEquals(Arrays.asList("my reason"), results);
+    }
+
+    /**
+     * Make sure that the token is passed to func of SyncPromise via action
+     */
+    @Test
+    public void test_token_from_action_sync_promise() {
+
+        final CancellationToken token = new CancellationToken();
+        final List<Object> results = new ArrayList<Object>();
+
+        SyncPromise.resolve()
+                .withCancellationToken(token)
+                .then((action, data) -> {
+                    results.add(action.getCancellationToken());
+                    action.getCancellationToken().cancel();
+                    action.resolve();
+                })
+                .then((action, data) -> {
+                    results.add("skipped step is run");
+                    action.resolve();
+                })
+                .then(null, (action, data) -> {
+                    results.add(data.getClass().getSimpleName());
+                    action.resolve();
+                });
+
+        assertEquals(Arrays.asList(token, "CancellationException"), results);
+    }
+
+    /**
+     * Make sure that the rejection handler after the cancellation receives the reason and can resolve its step,
+     * on both Promise and SyncPromise
+     */
+    @Test
+    public void test_rejection_handler_resolves_after_cancellation() throws InterruptedException {
+
+        final CancellationToken token = new CancellationToken();
+        final List<Object> results = new ArrayList<Object>();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        final Promise onRejected = new Promise((action, data) -> {
+            results.add("recovered:" + data);
+            action.resolve();
+            latch.countDown();
+        });
+
+        Promise.resolve()
+                .withCancellationToken(token)
+                .then((action, data) -> {
+                    token.cancel("CANCELLED");
+                    action.resolve();
+                })
+                .then(null, onRejected)
+                .start();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        results.add(onRejected.getStatus());
+
+        final CancellationToken syncToken = new CancellationToken();
+        final SyncPromise syncPromise = SyncPromise.resolve()
+                .withCancellationToken(syncToken)
+                .then((action, data) -> {
+                    syncToken.cancel("CANCELLED");
+                    action.resolve();
+                })
+                .then(null, (action, data) -> action.resolve("recovered:" + data));
+
+        results.add(syncPromise.getStatus());
+        results.add(syncPromise.getValue());
+
+        assertEquals(Arrays.asList("recovered:CANCELLED", Status.FULFILLED, Status.FULFILLED, "recovered:CANCELLED"), results);
+    }
+}
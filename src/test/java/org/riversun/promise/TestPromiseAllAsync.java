@@ -1,12 +1,18 @@
 package org.riversun.promise;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 import org.junit.Test;
 
@@ -48,6 +54,21 @@ public class TestPromiseAllAsync extends TestPromiseAllTestCase {
         return Promise.all(funcs);
     }
 
+    @Override
+    public Thennable PromiseRace(Func... funcs) {
+        return Promise.race(funcs);
+    }
+
+    @Override
+    public Thennable PromiseAny(Func... funcs) {
+        return Promise.any(funcs);
+    }
+
+    @Override
+    public Thennable PromiseAllSettled(Func... funcs) {
+        return Promise.allSettled(funcs);
+    }
+
     @Override
     public Thennable PromiseResolve(Object data) {
         return Promise.resolve(data);
@@ -169,4 +190,176 @@ public class TestPromiseAllAsync extends TestPromiseAllTestCase {
             assertEquals(threadPoolName, threadPoolNameNext);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Make sure that Promise.all nested in funcs does not block a worker thread while waiting for children.
+     * All of them run on only one thread.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void test_promise_all_nested_on_single_thread() {
+
+        final ExecutorService myExecutor = Executors.newFixedThreadPool(1);
+
+        sync();
+        final List<Object> results = new ArrayList<Object>();
+
+        final Func innerAll1 = (action, data) -> {
+            Promise.all(myExecutor, (Func) (a, d) -> a.resolve("1"), (Func) (a, d) -> a.resolve("2"))
+                    .then((a, d) -> {
+                        a.resolve();
+                        action.resolve(d);
+                    })
+                    .start();
+        };
+        final Func innerAll2 = (action, data) -> {
+            Promise.all(myExecutor, (Func) (a, d) -> a.resolve("3"), (Func) (a, d) -> a.resolve("4"))
+                    .then((a, d) -> {
+                        a.resolve();
+                        action.resolve(d);
+                    })
+                    .start();
+        };
+
+        Promise.all(myExecutor, innerAll1, innerAll2)
+                .then((action, data) -> {
+                    for (Object o : (List<Object>) data) {
+                        results.addAll((List<Object>) o);
+                    }
+                    action.resolve();
+                    myExecutor.shutdown();
+                    consume();
+                })
+                .start();
+        await();
+
+        assertEquals(Arrays.asList("1", "2", "3", "4"), results);
+    }
+
+    /**
+     * Test Promise.allLimited keeps the order and the concurrency, pulling the funcs lazily
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void test_promiseAllLimited() throws InterruptedException {
+        final int concurrency = 4;
+        final AtomicInteger pulled = new AtomicInteger();
+        final AtomicInteger completed = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        final Iterable<Func> funcs = () -> new Iterator<Func>() {
+            int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < 50;
+            }
+
+            @Override
+            public Func next() {
+                final int value = i++;
+                pulled.incrementAndGet();
+                return (action, data) -> {
+                    maxInFlight.accumulateAndGet(pulled.get() - completed.get(), Math::max);
+                    Promise.sleep(5);
+                    completed.incrementAndGet();
+                    action.resolve(value);
+                };
+            }
+        };
+
+        final List<Object> results = new ArrayList<Object>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        Promise.allLimited(concurrency, funcs)
+                .then((action, data) -> {
+                    results.addAll((List<Object>) data);
+                    action.resolve();
+                    latch.countDown();
+                })
+                .start();
+        latch.await();
+
+        assertEquals(50, results.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, results.get(i));
+        }
+        assertTrue(maxInFlight.get() <= concurrency);
+    }
+
+    /**
+     * Test Promise.allLimited over a large stream
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void test_promiseAllLimited_stream() throws InterruptedException {
+        final int size = 20000;
+        final List<Object> results = new ArrayList<Object>();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        Promise.allLimited(16, IntStream.range(0, size).mapToObj(i -> (Func) (action, data) -> action.resolve(i)))
+                .then((action, data) -> {
+                    results.addAll((List<Object>) data);
+                    action.resolve();
+                    latch.countDown();
+                })
+                .start();
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+
+        assertEquals(size, results.size());
+        assertEquals(0, results.get(0));
+        assertEquals(size - 1, results.get(size - 1));
+    }
+
+    /**
+     * Test Promise.allLimited stops pulling on the first rejection
+     */
+    @Test
+    public void test_promiseAllLimited_rejection() throws InterruptedException {
+        final AtomicInteger pulled = new AtomicInteger();
+        final List<Object> results = new ArrayList<Object>();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        Promise.allLimited(2, IntStream.range(0, 100).mapToObj(i -> {
+            pulled.incrementAndGet();
+            return (Func) (action, data) -> {
+                if (i == 3) {
+                    action.reject("rejected at 3");
+                } else {
+                    Promise.sleep(10);
+                    action.resolve(i);
+                }
+            };
+        }))
+                .then(null, (action, data) -> {
+                    results.add(data);
+                    action.resolve();
+                    latch.countDown();
+                })
+                .start();
+        latch.await();
+        Thread.sleep(100);
+
+        assertEquals(Arrays.asList("rejected at 3"), results);
+        assertTrue(pulled.get() < 10);
+    }
+
+    /**
+     * Test Promise.allLimited with empty iterable
+     */
+    @Test
+    public void test_promiseAllLimited_empty() throws InterruptedException {
+        final List<Object> results = new ArrayList<Object>();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        Promise.allLimited(2, new ArrayList<Func>())
+                .then((action, data) -> {
+                    results.add(data);
+                    action.resolve();
+                    latch.countDown();
+                })
+                .start();
+        latch.await();
+
+        assertEquals(Arrays.asList(new ArrayList<Object>()), results);
+    }
+}
@@ -1,5 +1,18 @@
 package org.riversun.promise;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
 /**
  * Tests for SyncPromise.all<br>
  * 
@@ -26,6 +39,21 @@ public class TestPromiseAllSync extends TestPromiseAllTestCase {
         return SyncPromise.all(funcs);
     }
 
+    @Override
+    public Thennable PromiseRace(Func... funcs) {
+        return SyncPromise.race(funcs);
+    }
+
+    @Override
+    public Thennable PromiseAny(Func... funcs) {
+        return SyncPromise.any(funcs);
+    }
+
+    @Override
+    public Thennable PromiseAllSettled(Func... funcs) {
+        return SyncPromise.allSettled(funcs);
+    }
+
     @Override
     public Thennable PromiseResolve(Object data) {
         return SyncPromise.resolve(data);
@@ -36,4 +64,75 @@ public class TestPromiseAllSync extends TestPromiseAllTestCase {
         return SyncPromise.reject(data);
     }
 
-}
\ No newline at end of file
+    /**
+     * Make sure that repeated calls reuse the executor's threads and the caller runs the last element
+     */
+    @Test
+    public void test_syncPromiseAll_reuses_executor() {
+        final AtomicInteger createdThreads = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(2, r -> {
+            createdThreads.incrementAndGet();
+            return new Thread(r);
+        });
+        final Thread caller = Thread.currentThread();
+        try {
+            for (int i = 0; i < 20; i++) {
+                final SyncPromise promise = SyncPromise.all(executor,
+                        (action, data) -> action.resolve(Thread.currentThread() == caller),
+                        (action, data) -> action.resolve(Thread.currentThread() == caller),
+                        (action, data) -> action.resolve(Thread.currentThread() == caller));
+                assertEquals(Status.FULFILLED, promise.getStatus());
+                // The caller runs the last element, and also the others the threads have not started yet
+                assertEquals(true, ((List<?>) promise.getValue()).get(2));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(createdThreads.get() <= 2);
+    }
+
+    /**
+     * Make sure that a rejection is not held up by the element the caller runs
+     */
+    @Test
+    public void test_syncPromiseAll_interrupts_caller_element() throws InterruptedException {
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final long startTime = System.currentTimeMillis();
+        final SyncPromise promise = SyncPromise.all(
+                (action, data) -> {
+                    Promise.sleep(100);
+                    action.reject("rejected");
+                },
+                interruptibleFunc(interrupted));
+        assertEquals(Status.REJECTED, promise.getStatus());
+        assertEquals("rejected", promise.getValue());
+        assertTrue(System.currentTimeMillis() - startTime < 5000);
+        assertTrue(interrupted.await(0, TimeUnit.SECONDS));
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    /**
+     * Make sure that the interrupt of the caller from outside is kept when another element decides the outcome
+     */
+    @Test
+    public void test_syncPromiseAll_keeps_interrupt_from_outside() {
+        final AtomicInteger rejected = new AtomicInteger();
+        final SyncPromise promise = SyncPromise.all(
+                (action, data) -> {
+                    Promise.sleep(50);
+                    rejected.incrementAndGet();
+                    action.reject("rejected");
+                },
+                (action, data) -> {
+                    // Interrupted from outside while running the caller's element
+                    Thread.currentThread().interrupt();
+                    final long startTime = System.currentTimeMillis();
+                    while (rejected.get() == 0 || System.currentTimeMillis() - startTime < 200) {
+                        // Busy without checking the interrupt
+                    }
+                    action.resolve();
+                });
+        assertEquals(Status.REJECTED, promise.getStatus());
+        assertTrue(Thread.interrupted());
+    }
+}
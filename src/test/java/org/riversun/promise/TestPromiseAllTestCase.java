@@ -3,12 +3,15 @@ package org.riversun.promise;
 import static org.hamcrest.CoreMatchers.hasItems;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
@@ -23,6 +26,12 @@ public abstract class TestPromiseAllTestCase {
 
     public abstract Thennable PromiseAll(Func... funcs);
 
+    public abstract Thennable PromiseRace(Func... funcs);
+
+    public abstract Thennable PromiseAny(Func... funcs);
+
+    public abstract Thennable PromiseAllSettled(Func... funcs);
+
     public abstract Thennable PromiseResolve(Object data);
 
     public Thennable PromiseResolve() {
@@ -419,4 +428,190 @@ public abstract class TestPromiseAllTestCase {
         assertEquals(Arrays.asList(new String[] { "str1", "str2" }), Arrays.asList((String[]) holder.data));
     }
 
+    /**
+     * Func that sleeps long and counts down the latch when interrupted
+     */
+    static Func interruptibleFunc(final CountDownLatch interrupted) {
+        return (action, data) -> {
+            try {
+                Thread.sleep(10000);
+                action.resolve("slow");
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                action.reject(e);
+            }
+        };
+    }
+
+    /**
+     * Test PromiseAll rejected with the first rejection in time and the siblings are interrupted
+     */
+    @Test
+    public void test_promiseAll_cancels_siblings_on_rejection() throws InterruptedException {
+        sync();
+        final List<Object> results = new ArrayList<Object>();
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final long startTime = System.currentTimeMillis();
+        PromiseAll(
+                interruptibleFunc(interrupted),
+                (action, data) -> {
+                    Promise.sleep(1000);
+                    action.reject("late");
+                },
+                (action, data) -> {
+                    Promise.sleep(100);
+                    action.reject("early");
+                })
+                        .then(null, (Action action, Object data) -> {
+                            results.add(data);
+                            action.resolve();
+                            consume();
+                        })
+                        .start();
+        await();
+        assertEquals(Arrays.asList("early"), results);
+        assertTrue(System.currentTimeMillis() - startTime < 1000);
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Test PromiseRace settled with the first fulfillment and the loser is interrupted
+     */
+    @Test
+    public void test_promiseRace_fulfilled() throws InterruptedException {
+        sync();
+        final ObjectHolder holder = new ObjectHolder();
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        PromiseRace(
+                interruptibleFunc(interrupted),
+                (action, data) -> {
+                    Promise.sleep(100);
+                    action.resolve("fast");
+                })
+                        .then((Action action, Object data) -> {
+                            holder.data = data;
+                            action.resolve();
+                            consume();
+                        })
+                        .start();
+        await();
+        assertEquals("fast", holder.data);
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Test PromiseRace settled with the first rejection
+     */
+    @Test
+    public void test_promiseRace_rejected() {
+        sync();
+        final ObjectHolder holder = new ObjectHolder();
+        PromiseRace(
+                (action, data) -> {
+                    Promise.sleep(1000);
+                    action.resolve("slow");
+                },
+                (action, data) -> {
+                    action.reject("fast");
+                })
+                        .then(null, (Action action, Object data) -> {
+                            holder.data = data;
+                            action.resolve();
+                            consume();
+                        })
+                        .start();
+        await();
+        assertEquals("fast", holder.data);
+    }
+
+    /**
+     * Test PromiseAny ignores rejections until the first fulfillment
+     */
+    @Test
+    public void test_promiseAny_fulfilled() throws InterruptedException {
+        sync();
+        final ObjectHolder holder = new ObjectHolder();
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        PromiseAny(
+                (action, data) -> {
+                    action.reject("error");
+                },
+                (action, data) -> {
+                    Promise.sleep(200);
+                    action.resolve("ok");
+                },
+                interruptibleFunc(interrupted))
+                        .then((Action action, Object data) -> {
+                            holder.data = data;
+                            action.resolve();
+                            consume();
+                        })
+                        .start();
+        await();
+        assertEquals("ok", holder.data);
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Test PromiseAny rejected with all the reasons
+     */
+    @Test
+    public void test_promiseAny_all_rejected() {
+        sync();
+        final ObjectHolder holder = new ObjectHolder();
+        PromiseAny(
+                (action, data) -> {
+                    Promise.sleep(100);
+                    action.reject("error1");
+                },
+                (action, data) -> {
+                    action.reject("error2");
+                })
+                        .then(null, (Action action, Object data) -> {
+                            holder.data = data;
+                            action.resolve();
+                            consume();
+                        })
+                        .start();
+        await();
+        assertEquals(true, holder.data instanceof PromiseAggregateException);
+        assertEquals(Arrays.asList("error1", "error2"), ((PromiseAggregateException) holder.data).getReasons());
+    }
+
+    /**
+     * Test PromiseAllSettled returns all the outcomes in order
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void test_promiseAllSettled() {
+        sync();
+        final ObjectHolder holder = new ObjectHolder();
+        PromiseAllSettled(
+                (action, data) -> {
+                    Promise.sleep(100);
+                    action.resolve("1");
+                },
+                (action, data) -> {
+                    action.reject("2");
+                },
+                (action, data) -> {
+                    throw new Exception("3");
+                })
+                        .then((Action action, Object data) -> {
+                            holder.data = data;
+                            action.resolve();
+                            consume();
+                        })
+                        .start();
+        await();
+        final List<SettledResult> results = (List<SettledResult>) holder.data;
+        assertEquals(3, results.size());
+        assertEquals(Status.FULFILLED, results.get(0).getStatus());
+        assertEquals("1", results.get(0).getValue());
+        assertEquals(Status.REJECTED, results.get(1).getStatus());
+        assertEquals("2", results.get(1).getValue());
+        assertEquals(true, results.get(2).isRejected());
+        assertEquals("3", ((Exception) results.get(2).getValue()).getMessage());
+    }
+
 }
\ No newline at end of file
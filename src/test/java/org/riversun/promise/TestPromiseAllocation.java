@@ -0,0 +1,77 @@
+package org.riversun.promise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Tests for the allocation of the steps of Promise<br>
+ * 
+ * Tom Misawa (riversun.org@gmail.com)
+ */
+public class TestPromiseAllocation {
+
+    // Upper bound of the bytes allocated by a step of "then(func)" and its run, the next promise and its action
+    private static final long BYTES_PER_STEP_BUDGET = 256;
+
+    private static final int STEPS = 1000;
+
+    private static final Func STEP = (action, data) -> action.resolve(data);
+
+    // Runs the chain on the calling thread, so that all the allocations are counted on it
+    private static final PromiseScheduler CALLER_RUNS = new PromiseScheduler() {
+        @Override
+        public void execute(Runnable task) {
+            task.run();
+        }
+
+        @Override
+        public boolean isShared() {
+            return true;
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    };
+
+    /**
+     * Make sure that a step of "then(func)" stays within the allocation budget
+     */
+    @Test
+    public void test_bytes_per_step() {
+
+        final java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        Assume.assumeTrue(allocationMXBean.isThreadAllocatedMemorySupported());
+        allocationMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        final long threadId = Thread.currentThread().getId();
+        long minBytesPerStep = Long.MAX_VALUE;
+
+        // The smallest of the rounds, after the JIT warmed up
+        for (int round = 0; round < 20; round++) {
+            final long startBytes = allocationMXBean.getThreadAllocatedBytes(threadId);
+            final Object result = runChain();
+            final long bytes = allocationMXBean.getThreadAllocatedBytes(threadId) - startBytes;
+            assertEquals("result", result);
+            minBytesPerStep = Math.min(minBytesPerStep, bytes / STEPS);
+        }
+
+        assertTrue("bytes per step=" + minBytesPerStep, minBytesPerStep <= BYTES_PER_STEP_BUDGET);
+    }
+
+    private static Object runChain() {
+        Promise promise = Promise.resolveOn("result", CALLER_RUNS);
+        for (int i = 0; i < STEPS; i++) {
+            promise = promise.then(STEP);
+        }
+        promise.start();
+        return promise.getValue();
+    }
+}
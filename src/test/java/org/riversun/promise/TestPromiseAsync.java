@@ -1,6 +1,14 @@
 package org.riversun.promise;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
 
 /**
  * Tests for Promise<br>
@@ -41,4 +49,101 @@ public class TestPromiseAsync extends TestPromiseTestCase {
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * Make sure that the next step runs once even if resolve and reject race on different threads
+     */
+    @Test
+    public void test_racing_settle() throws InterruptedException {
+
+        final int numOfChains = 500;
+        final AtomicInteger counter = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(numOfChains);
+
+        for (int i = 0; i < numOfChains; i++) {
+            Promise.resolve()
+                    .then((action, data) -> {
+                        final CountDownLatch ready = new CountDownLatch(1);
+                        new Thread(() -> {
+                            try {
+                                ready.await();
+                            } catch (InterruptedException e) {
+                            }
+                            action.reject();
+                        }).start();
+                        ready.countDown();
+                        action.resolve();
+                    })
+                    .always((action, data) -> {
+                        counter.incrementAndGet();
+                        action.resolve();
+                        latch.countDown();
+                    })
+                    .start();
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Thread.sleep(200);
+
+        assertEquals(numOfChains, counter.get());
+    }
+
+    /**
+     * Make sure that "then" called after the chain finished runs with the outcome
+     */
+    @Test
+    public void test_then_after_finished() throws Exception {
+
+        final CountDownLatch finished = new CountDownLatch(1);
+
+        final Promise promise = Promise.resolve("value")
+                .then((action, data) -> {
+                    action.resolve(data + "-1");
+                    finished.countDown();
+                });
+        promise.start();
+        finished.await();
+
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (promise.getStatus() != Status.FULFILLED) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        assertEquals("value-1", promise.getValue());
+
+        final CompletableFuture<Object> future = new CompletableFuture<Object>();
+        promise.then((action, data) -> {
+            future.complete(data + "-2");
+            action.resolve();
+        });
+
+        assertEquals("value-1-2", future.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Make sure that "then" racing with the end of the chain runs exactly once
+     */
+    @Test
+    public void test_then_racing_with_finish() throws InterruptedException {
+
+        final int numOfChains = 500;
+        final AtomicInteger counter = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(numOfChains);
+
+        for (int i = 0; i < numOfChains; i++) {
+            final Promise promise = Promise.resolve()
+                    .then((action, data) -> {
+                        action.resolve("done");
+                    });
+            promise.start();
+            promise.then((action, data) -> {
+                counter.incrementAndGet();
+                action.resolve();
+                latch.countDown();
+            });
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Thread.sleep(200);
+
+        assertEquals(numOfChains, counter.get());
+    }
+
+}
@@ -0,0 +1,199 @@
+package org.riversun.promise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests for PromiseBatcher
+ * 
+ * Tom Misawa (riversun.org@gmail.com)
+ */
+public class TestPromiseBatcher {
+
+    private static List<CompletableFuture<Object>> loadAll(PromiseBatcher<Integer, Object> batcher, Integer... keys) {
+        final List<CompletableFuture<Object>> futures = new ArrayList<CompletableFuture<Object>>();
+        for (Integer key : keys) {
+            futures.add(batcher.load(key).toCompletableFuture());
+        }
+        return futures;
+    }
+
+    /**
+     * Make sure that the keys in a window are fetched by a single batch and the duplicate keys are coalesced
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void test_batch_and_coalesce() throws Exception {
+
+        final List<List<Object>> batches = Collections.synchronizedList(new ArrayList<List<Object>>());
+
+        final PromiseBatcher<Integer, Object> batcher = new PromiseBatcher<Integer, Object>((action, data) -> {
+            final List<Integer> keys = (List<Integer>) data;
+            batches.add(new ArrayList<Object>(keys));
+            final List<Object> values = new ArrayList<Object>();
+            for (Integer key : keys) {
+                values.add("value-" + key);
+            }
+            action.resolve(values);
+        }, 1000, 50);
+
+        final List<CompletableFuture<Object>> futures = new ArrayList<CompletableFuture<Object>>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(batcher.load(i % 10).toCompletableFuture());
+        }
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals("value-" + (i % 10), futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, batches.size());
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), batches.get(0));
+    }
+
+    /**
+     * Make sure that a batch is dispatched as soon as it reaches the max size
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void test_max_batch_size() throws Exception {
+
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+
+        final PromiseBatcher<Integer, Object> batcher = new PromiseBatcher<Integer, Object>((action, data) -> {
+            final List<Integer> keys = (List<Integer>) data;
+            batchSizes.add(keys.size());
+            action.resolve(new ArrayList<Object>(keys));
+        }, 5, 60000);
+
+        final List<CompletableFuture<Object>> futures = loadAll(batcher, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(Arrays.asList(5, 5), batchSizes);
+
+        // The rest waits for the window unless dispatched explicitly
+        batcher.dispatch();
+        assertEquals(11, futures.get(11).get(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(5, 5, 2), batchSizes);
+    }
+
+    /**
+     * Make sure that the batch func can resolve with a map
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void test_map_result() throws Exception {
+
+        final PromiseBatcher<Integer, Object> batcher = new PromiseBatcher<Integer, Object>((action, data) -> {
+            final Map<Integer, Object> values = new HashMap<Integer, Object>();
+            for (Integer key : (List<Integer>) data) {
+                if (key % 2 == 0) {
+                    values.put(key, "even-" + key);
+                }
+            }
+            action.resolve(values);
+        });
+
+        final List<CompletableFuture<Object>> futures = loadAll(batcher, 1, 2, 3, 4);
+
+        assertNull(futures.get(0).get(5, TimeUnit.SECONDS));
+        assertEquals("even-2", futures.get(1).get(5, TimeUnit.SECONDS));
+        assertNull(futures.get(2).get(5, TimeUnit.SECONDS));
+        assertEquals("even-4", futures.get(3).get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Make sure that all the promises of the batch are rejected when the batch func rejects
+     */
+    @Test
+    public void test_batch_rejected() throws Exception {
+
+        final IllegalStateException exception = new IllegalStateException("backend down");
+
+        final PromiseBatcher<Integer, Object> batcher = new PromiseBatcher<Integer, Object>((action, data) -> {
+            action.reject(exception);
+        });
+
+        for (CompletableFuture<Object> future : loadAll(batcher, 1, 2, 2, 3)) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertSame(exception, e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Make sure that the promises are rejected when the result does not match the keys
+     */
+    @Test
+    public void test_result_size_mismatch() throws Exception {
+
+        final PromiseBatcher<Integer, Object> batcher = new PromiseBatcher<Integer, Object>((action, data) -> {
+            action.resolve(Arrays.asList("only one"));
+        }, 1000, 60000);
+
+        // Dispatched explicitly, since the timer may split the keys into two batches with the window of the next tick
+        final List<CompletableFuture<Object>> futures = loadAll(batcher, 1, 2);
+        batcher.dispatch();
+
+        for (CompletableFuture<Object> future : futures) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+    }
+
+    /**
+     * Make sure that the promises left pending are rejected when the distribution of the result fails
+     */
+    @Test
+    public void test_distribution_fails() throws Exception {
+
+        final IllegalStateException exception = new IllegalStateException("broken map");
+
+        final PromiseBatcher<Integer, Object> batcher = new PromiseBatcher<Integer, Object>((action, data) -> {
+            action.resolve(new HashMap<Integer, Object>() {
+                @Override
+                public Object get(Object key) {
+                    if (key.equals(2)) {
+                        throw exception;
+                    }
+                    return "value-" + key;
+                }
+            });
+        }, 1000, 60000);
+
+        final List<CompletableFuture<Object>> futures = loadAll(batcher, 1, 2, 3);
+        batcher.dispatch();
+
+        assertEquals("value-1", futures.get(0).get(5, TimeUnit.SECONDS));
+        for (CompletableFuture<Object> future : futures.subList(1, 3)) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertSame(exception, e.getCause());
+            }
+        }
+    }
+}
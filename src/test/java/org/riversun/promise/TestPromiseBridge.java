@@ -0,0 +1,170 @@
+package org.riversun.promise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests for the bridge between Promise and CompletableFuture<br>
+ * 
+ * Tom Misawa (riversun.org@gmail.com)
+ */
+public class TestPromiseBridge {
+
+    /**
+     * Make sure that the chain continues on the thread completing the future
+     */
+    @Test
+    public void test_from_completed_later() throws InterruptedException {
+
+        final CompletableFuture<String> future = new CompletableFuture<String>();
+        final List<Object> results = new ArrayList<Object>();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        Promise.from(future)
+                .then((action, data) -> {
+                    results.add(data);
+                    results.add(Thread.currentThread().getName());
+                    action.resolve();
+                    latch.countDown();
+                })
+                .start();
+
+        final Thread completer = new Thread(() -> {
+            Promise.sleep(100);
+            future.complete("value");
+        }, "completer");
+        completer.start();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("value", "completer"), results);
+    }
+
+    /**
+     * Make sure that the exception of the future is the rejection reason
+     */
+    @Test
+    public void test_from_failed() throws InterruptedException {
+
+        final IllegalStateException exception = new IllegalStateException("failed");
+        final CompletableFuture<Object> future = CompletableFuture.supplyAsync(() -> {
+            throw exception;
+        });
+        final List<Object> results = new ArrayList<Object>();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        Promise.from(future)
+                .then(null, (action, data) -> {
+                    results.add(data);
+                    action.resolve();
+                    latch.countDown();
+                })
+                .start();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, results.size());
+        assertSame(exception, results.get(0));
+    }
+
+    /**
+     * Make sure that the future is completed with the result of the chain
+     */
+    @Test
+    public void test_to_completable_future() throws Exception {
+
+        final CompletableFuture<Object> future = Promise.resolve("start")
+                .then((action, data) -> {
+                    action.resolve(data + "-end");
+                })
+                .toCompletableFuture();
+
+        assertEquals("start-end", future.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Make sure that the future is completed exceptionally with the rejection reason
+     */
+    @Test
+    public void test_to_completable_future_rejected() throws Exception {
+
+        final CompletableFuture<Object> future = Promise.resolve()
+                .then((action, data) -> {
+                    action.reject("my reason");
+                })
+                .toCompletableFuture();
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof PromiseException);
+            assertEquals("my reason", ((PromiseException) e.getCause()).getValue());
+        }
+    }
+
+    /**
+     * Make sure that the rejection reason survives the round trip
+     */
+    @Test
+    public void test_round_trip() throws InterruptedException {
+
+        final CompletableFuture<Object> future = Promise.reject("my reason")
+                .then((action, data) -> {
+                    action.resolve();
+                })
+                .toCompletableFuture();
+
+        final List<Object> results = new ArrayList<Object>();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        Promise.from(future.thenApply(data -> data))
+                .then(null, (action, data) -> {
+                    results.add(data);
+                    action.resolve();
+                    latch.countDown();
+                })
+                .start();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("my reason"), results);
+    }
+
+    /**
+     * Make sure that SyncPromise bridges in both directions
+     */
+    @Test
+    public void test_sync_promise() throws Exception {
+
+        final CompletableFuture<String> future = new CompletableFuture<String>();
+        new Thread(() -> {
+            Promise.sleep(100);
+            future.complete("value");
+        }).start();
+
+        final SyncPromise promise = SyncPromise.from(future)
+                .then((action, data) -> {
+                    action.resolve(data + "-end");
+                });
+
+        assertEquals("value-end", promise.toCompletableFuture().get());
+
+        final CompletableFuture<Object> failed = new CompletableFuture<Object>();
+        failed.completeExceptionally(new IllegalStateException("failed"));
+
+        final SyncPromise rejected = SyncPromise.from(failed);
+        assertEquals(Status.REJECTED, rejected.getStatus());
+        assertTrue(rejected.getValue() instanceof IllegalStateException);
+        assertTrue(rejected.toCompletableFuture().isCompletedExceptionally());
+    }
+}
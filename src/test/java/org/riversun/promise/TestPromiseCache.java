@@ -0,0 +1,194 @@
+package org.riversun.promise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests for PromiseCache
+ * 
+ * Tom Misawa (riversun.org@gmail.com)
+ */
+public class TestPromiseCache {
+
+    private static Object get(PromiseCache<Integer> cache, Integer key) throws Exception {
+        return cache.get(key).toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Make sure that concurrent requesters of a key share a single load
+     */
+    @Test
+    public void test_single_flight() throws Exception {
+
+        final AtomicInteger loadCount = new AtomicInteger();
+
+        final PromiseCache<Integer> cache = new PromiseCache<Integer>((action, data) -> {
+            loadCount.incrementAndGet();
+            Promise.sleep(100);
+            action.resolve("value-" + data);
+        });
+
+        final List<CompletableFuture<Object>> futures = new ArrayList<CompletableFuture<Object>>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(cache.get(1).toCompletableFuture());
+        }
+        for (CompletableFuture<Object> future : futures) {
+            assertEquals("value-1", future.get(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals("value-1", get(cache, 1));
+        assertEquals(1, loadCount.get());
+
+        final PromiseCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.getLoadSuccessCount());
+        assertEquals(1, stats.getHitCount());
+        assertEquals(20, stats.getMissCount());
+    }
+
+    /**
+     * Make sure that a rejected load is not cached
+     */
+    @Test
+    public void test_rejection_not_cached() throws Exception {
+
+        final AtomicInteger loadCount = new AtomicInteger();
+
+        final PromiseCache<Integer> cache = new PromiseCache<Integer>((action, data) -> {
+            if (loadCount.incrementAndGet() == 1) {
+                action.reject("failed");
+            } else {
+                action.resolve("value");
+            }
+        });
+
+        try {
+            get(cache, 1);
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals("failed", ((PromiseException) e.getCause()).getValue());
+        }
+
+        assertEquals("value", get(cache, 1));
+        assertEquals("value", get(cache, 1));
+        assertEquals(2, loadCount.get());
+        assertEquals(1, cache.getStats().getLoadFailureCount());
+    }
+
+    /**
+     * Make sure that the entries over maximumSize are evicted
+     */
+    @Test
+    public void test_maximum_size() throws Exception {
+
+        final PromiseCache<Integer> cache = new PromiseCache<Integer>((action, data) -> {
+            action.resolve(data);
+        }).maximumSize(10);
+
+        for (int i = 0; i < 30; i++) {
+            assertEquals(i, get(cache, i));
+        }
+
+        assertEquals(10, cache.size());
+        assertEquals(20, cache.getStats().getEvictionCount());
+    }
+
+    /**
+     * Make sure that a scan of one-time keys does not evict the entries used twice
+     */
+    @Test
+    public void test_scan_resistance() throws Exception {
+
+        final AtomicInteger loadCount = new AtomicInteger();
+
+        final PromiseCache<Integer> cache = new PromiseCache<Integer>((action, data) -> {
+            loadCount.incrementAndGet();
+            action.resolve(data);
+        }).maximumSize(10);
+
+        for (int i = 0; i < 5; i++) {
+            get(cache, i);
+            get(cache, i);
+        }
+        for (int i = 100; i < 200; i++) {
+            get(cache, i);
+        }
+
+        loadCount.set(0);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, get(cache, i));
+        }
+        assertEquals(0, loadCount.get());
+    }
+
+    /**
+     * Make sure that the entries expire after write
+     */
+    @Test
+    public void test_expire_after_write() throws Exception {
+
+        final AtomicInteger loadCount = new AtomicInteger();
+
+        final PromiseCache<Integer> cache = new PromiseCache<Integer>((action, data) -> {
+            action.resolve(loadCount.incrementAndGet());
+        }).expireAfterWrite(50);
+
+        assertEquals(1, get(cache, 1));
+        assertEquals(1, get(cache, 1));
+        Thread.sleep(100);
+        assertEquals(2, get(cache, 1));
+    }
+
+    /**
+     * Make sure that the stale value is returned while refreshing in the background
+     */
+    @Test
+    public void test_refresh_after_write() throws Exception {
+
+        final AtomicInteger loadCount = new AtomicInteger();
+
+        final PromiseCache<Integer> cache = new PromiseCache<Integer>((action, data) -> {
+            action.resolve(loadCount.incrementAndGet());
+        }).refreshAfterWrite(50);
+
+        assertEquals(1, get(cache, 1));
+        Thread.sleep(100);
+        assertEquals(1, get(cache, 1));
+
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!Integer.valueOf(2).equals(get(cache, 1))) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        assertEquals(2, loadCount.get());
+        assertEquals(1, cache.size());
+    }
+
+    /**
+     * Make sure that the entry can be invalidated
+     */
+    @Test
+    public void test_invalidate() throws Exception {
+
+        final AtomicInteger loadCount = new AtomicInteger();
+
+        final PromiseCache<Integer> cache = new PromiseCache<Integer>((action, data) -> {
+            action.resolve(loadCount.incrementAndGet());
+        });
+
+        assertEquals(1, get(cache, 1));
+        cache.invalidate(1);
+        assertEquals(2, get(cache, 1));
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,307 @@
+package org.riversun.promise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Tests for PromiseFlow<br>
+ * 
+ * Tom Misawa (riversun.org@gmail.com)
+ */
+public class TestPromiseFlow {
+
+    /**
+     * Subscriber recording the signals, requests the specified number of items on each onNext
+     */
+    private static class RecordingSubscriber implements PromiseFlow.Subscriber<Object> {
+
+        final List<Object> items = Collections.synchronizedList(new ArrayList<Object>());
+        final CountDownLatch terminated = new CountDownLatch(1);
+        final long initialRequest;
+        final long requestOnNext;
+        volatile Throwable error;
+        volatile boolean completed;
+        volatile PromiseFlow.Subscription subscription;
+
+        RecordingSubscriber(long initialRequest, long requestOnNext) {
+            this.initialRequest = initialRequest;
+            this.requestOnNext = requestOnNext;
+        }
+
+        @Override
+        public void onSubscribe(PromiseFlow.Subscription subscription) {
+            this.subscription = subscription;
+            if (initialRequest > 0) {
+                subscription.request(initialRequest);
+            }
+        }
+
+        @Override
+        public void onNext(Object item) {
+            items.add(item);
+            if (requestOnNext > 0) {
+                subscription.request(requestOnNext);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            terminated.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(terminated.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * Publisher counting the items requested
+     */
+    private static class CountingPublisher implements PromiseFlow.Publisher<Object> {
+
+        final AtomicLong requested = new AtomicLong();
+        final AtomicInteger cancelled = new AtomicInteger();
+        final List<Object> items;
+
+        CountingPublisher(List<Object> items) {
+            this.items = items;
+        }
+
+        @Override
+        public void subscribe(PromiseFlow.Subscriber<? super Object> subscriber) {
+            new PromiseFlow.IterablePublisher<Object>(items).subscribe(new PromiseFlow.Subscriber<Object>() {
+                @Override
+                public void onSubscribe(PromiseFlow.Subscription subscription) {
+                    subscriber.onSubscribe(new PromiseFlow.Subscription() {
+                        @Override
+                        public void request(long n) {
+                            requested.addAndGet(n);
+                            subscription.request(n);
+                        }
+
+                        @Override
+                        public void cancel() {
+                            cancelled.incrementAndGet();
+                            subscription.cancel();
+                        }
+                    });
+                }
+
+                @Override
+                public void onNext(Object item) {
+                    subscriber.onNext(item);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    subscriber.onError(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    subscriber.onComplete();
+                }
+            });
+        }
+    }
+
+    private static List<Object> range(int size) {
+        final List<Object> items = new ArrayList<Object>();
+        for (int i = 0; i < size; i++) {
+            items.add(i);
+        }
+        return items;
+    }
+
+    /**
+     * Make sure that the func is applied to all the items within the concurrency
+     */
+    @Test
+    public void test_processor_concurrency() throws InterruptedException {
+
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        final PromiseFlow.Processor<Object, Object> processor = PromiseFlow.processor((action, data) -> {
+            final int crrRunning = running.incrementAndGet();
+            maxRunning.accumulateAndGet(crrRunning, Math::max);
+            Promise.sleep(10);
+            running.decrementAndGet();
+            action.resolve((Integer) data * 2);
+        }, 3);
+
+        final RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE, 0);
+        processor.subscribe(subscriber);
+        new PromiseFlow.IterablePublisher<Object>(range(30)).subscribe(processor);
+
+        subscriber.await();
+        assertTrue(subscriber.completed);
+        assertEquals(30, subscriber.items.size());
+        final HashSet<Object> expected = new HashSet<Object>();
+        for (int i = 0; i < 30; i++) {
+            expected.add(i * 2);
+        }
+        assertEquals(expected, new HashSet<Object>(subscriber.items));
+        assertTrue(maxRunning.get() <= 3);
+    }
+
+    /**
+     * Make sure that a slow subscriber throttles the upstream
+     */
+    @Test
+    public void test_processor_backpressure() throws InterruptedException {
+
+        final int concurrency = 4;
+        final CountingPublisher upstream = new CountingPublisher(range(100));
+        final PromiseFlow.Processor<Object, Object> processor = PromiseFlow.processor((action, data) -> {
+            action.resolve(data);
+        }, concurrency);
+
+        final RecordingSubscriber subscriber = new RecordingSubscriber(2, 0);
+        processor.subscribe(subscriber);
+        upstream.subscribe(processor);
+
+        Thread.sleep(300);
+        assertEquals(2, subscriber.items.size());
+        assertTrue(upstream.requested.get() <= 2 + concurrency);
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        subscriber.await();
+        assertEquals(100, subscriber.items.size());
+        assertTrue(subscriber.completed);
+    }
+
+    /**
+     * Make sure that the results are emitted in the order of completion
+     */
+    @Test
+    public void test_publisher_emits_as_completed() throws InterruptedException {
+
+        final PromiseFlow.Publisher<Object> publisher = PromiseFlow.publisher(3,
+                (action, data) -> {
+                    Promise.sleep(300);
+                    action.resolve("slow");
+                },
+                (action, data) -> {
+                    action.resolve("fast");
+                },
+                (action, data) -> {
+                    Promise.sleep(100);
+                    action.resolve("middle");
+                });
+
+        final RecordingSubscriber subscriber = new RecordingSubscriber(1, 1);
+        publisher.subscribe(subscriber);
+
+        subscriber.await();
+        assertTrue(subscriber.completed);
+        assertEquals(Arrays.asList("fast", "middle", "slow"), subscriber.items);
+    }
+
+    /**
+     * Make sure that a rejection terminates the stream and cancels the upstream
+     */
+    @Test
+    public void test_processor_rejection() throws InterruptedException {
+
+        final CountingPublisher upstream = new CountingPublisher(range(100));
+        final PromiseFlow.Processor<Object, Object> processor = PromiseFlow.processor((action, data) -> {
+            if ((Integer) data == 5) {
+                action.reject("failed at 5");
+            } else {
+                action.resolve(data);
+            }
+        }, 2);
+
+        final RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE, 0);
+        processor.subscribe(subscriber);
+        upstream.subscribe(processor);
+
+        subscriber.await();
+        assertTrue(subscriber.error instanceof PromiseException);
+        assertEquals("failed at 5", ((PromiseException) subscriber.error).getValue());
+        assertEquals(1, upstream.cancelled.get());
+        assertTrue(upstream.requested.get() < 100);
+    }
+
+    /**
+     * Make sure that non-positive request is signaled as onError(rule 3.9)
+     */
+    @Test
+    public void test_request_must_be_positive() throws InterruptedException {
+
+        final PromiseFlow.Publisher<Object> publisher = PromiseFlow.publisher(1, (action, data) -> {
+            action.resolve("1");
+        });
+
+        final RecordingSubscriber subscriber = new RecordingSubscriber(0, 0);
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(0);
+
+        subscriber.await();
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+    }
+
+    /**
+     * Make sure that the processor rejects the second subscriber
+     */
+    @Test
+    public void test_processor_single_subscriber() throws InterruptedException {
+
+        final PromiseFlow.Processor<Object, Object> processor = PromiseFlow.processor((action, data) -> {
+            action.resolve(data);
+        }, 1);
+
+        processor.subscribe(new RecordingSubscriber(0, 0));
+
+        final RecordingSubscriber second = new RecordingSubscriber(0, 0);
+        processor.subscribe(second);
+        second.await();
+        assertTrue(second.error instanceof IllegalStateException);
+    }
+
+    /**
+     * Make sure that no item is emitted after cancel
+     */
+    @Test
+    public void test_cancel() throws InterruptedException {
+
+        final CountingPublisher upstream = new CountingPublisher(range(100));
+        final PromiseFlow.Processor<Object, Object> processor = PromiseFlow.processor((action, data) -> {
+            action.resolve(data);
+        }, 2);
+
+        final RecordingSubscriber subscriber = new RecordingSubscriber(3, 0);
+        processor.subscribe(subscriber);
+        upstream.subscribe(processor);
+
+        Thread.sleep(200);
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(10);
+        Thread.sleep(200);
+
+        assertEquals(3, subscriber.items.size());
+        assertEquals(1, upstream.cancelled.get());
+        assertNull(subscriber.error);
+    }
+}
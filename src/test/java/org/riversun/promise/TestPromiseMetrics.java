@@ -0,0 +1,150 @@
+package org.riversun.promise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for PromiseMetrics
+ * 
+ * Tom Misawa (riversun.org@gmail.com)
+ */
+public class TestPromiseMetrics {
+
+    @After
+    public void tearDown() {
+        PromiseMetrics.uninstall();
+    }
+
+    /**
+     * Make sure that the percentiles are accurate to the bucket
+     */
+    @Test
+    public void test_histogram_percentile() {
+
+        final PromiseHistogram histogram = new PromiseHistogram();
+        for (long i = 1; i <= 100000; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(100000, histogram.getCount());
+        assertEquals(100000, histogram.getMax());
+        assertEquals(50000.5, histogram.getMean(), 0.001);
+
+        final long p50 = histogram.getValueAtPercentile(50.0);
+        final long p99 = histogram.getValueAtPercentile(99.0);
+        assertTrue("p50=" + p50, p50 >= 50000 && p50 <= 50000 * 1.04);
+        assertTrue("p99=" + p99, p99 >= 99000 && p99 <= 100000);
+        assertEquals(100000, histogram.getValueAtPercentile(100.0));
+        assertEquals(0, new PromiseHistogram().getValueAtPercentile(99.0));
+    }
+
+    /**
+     * Make sure that each value falls into the bucket that covers it
+     */
+    @Test
+    public void test_histogram_buckets() {
+
+        final Random random = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            final long value = random.nextLong() & PromiseHistogram.MAX_VALUE >>> random.nextInt(40);
+            final long highest = PromiseHistogram.highestValueOf(PromiseHistogram.indexOf(value));
+            assertTrue(value + " " + highest, value <= highest && highest <= value * 1.04 + 1);
+        }
+        assertEquals(0, PromiseHistogram.indexOf(0));
+        assertEquals(PromiseHistogram.MAX_VALUE, PromiseHistogram.highestValueOf(PromiseHistogram.indexOf(PromiseHistogram.MAX_VALUE)));
+    }
+
+    /**
+     * Make sure that the timings of the steps and the chain are recorded by the names
+     */
+    @Test
+    public void test_step_and_chain_metrics() throws Exception {
+
+        final HistogramPromiseMetrics metrics = new HistogramPromiseMetrics();
+        PromiseMetrics.install(metrics);
+
+        Promise.resolve()
+                .then(new Promise("busy", (action, data) -> {
+                    Promise.sleep(50);
+                    action.resolve();
+                }))
+                .then(new Promise("async", (action, data) -> {
+                    new Thread(() -> {
+                        Promise.sleep(100);
+                        action.resolve();
+                    }).start();
+                }))
+                .then(new Promise("failing", (action, data) -> {
+                    action.reject("failed");
+                }))
+                .then(null, new Promise("recover", (action, data) -> {
+                    action.resolve();
+                }))
+                .toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        assertTrue(metrics.getExecutionTime("busy").getMax() >= TimeUnit.MILLISECONDS.toNanos(50));
+
+        // The func of "async" returns soon, but resolves later
+        assertTrue(metrics.getExecutionTime("async").getMax() < TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(metrics.getTimeToResolve("async").getMax() >= TimeUnit.MILLISECONDS.toNanos(100));
+
+        assertEquals(1, metrics.getRejectionCount("failing"));
+        assertEquals(0, metrics.getRejectionCount("recover"));
+
+        // Tagged by the name of the first promise of the chain
+        final String founderName = "Promise.Resolve.Created";
+
+        // Recorded after the last step completes the future
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (metrics.getChainLatency(founderName) == null) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        assertEquals(1, metrics.getQueueDelay(founderName).getCount());
+        assertEquals(1, metrics.getChainLatency(founderName).getCount());
+        assertTrue(metrics.getChainLatency(founderName).getMax() >= TimeUnit.MILLISECONDS.toNanos(150));
+    }
+
+    /**
+     * Make sure that the fan-out width of Promise.all is recorded
+     */
+    @Test
+    public void test_fan_out() throws Exception {
+
+        final HistogramPromiseMetrics metrics = new HistogramPromiseMetrics();
+        PromiseMetrics.install(metrics);
+
+        Promise.all(
+                (action, data) -> action.resolve(1),
+                (action, data) -> action.resolve(2),
+                (action, data) -> action.resolve(3))
+                .toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, metrics.getFanOut("Promise.all").getCount());
+        assertEquals(3, metrics.getFanOut("Promise.all").getMax());
+    }
+
+    /**
+     * Make sure that the names beyond the limit are aggregated
+     */
+    @Test
+    public void test_max_names() {
+
+        final HistogramPromiseMetrics metrics = new HistogramPromiseMetrics(2);
+        metrics.recordExecutionTime("a", 1);
+        metrics.recordExecutionTime("b", 1);
+        metrics.recordExecutionTime("c", 1);
+        metrics.recordExecutionTime("d", 1);
+
+        assertEquals(1, metrics.getExecutionTime("a").getCount());
+        assertNull(metrics.getExecutionTime("c"));
+        assertEquals(2, metrics.getExecutionTime(HistogramPromiseMetrics.OTHERS).getCount());
+    }
+}
@@ -0,0 +1,171 @@
+package org.riversun.promise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * Tests for PromisePipeline<br>
+ * 
+ * Tom Misawa (riversun.org@gmail.com)
+ */
+public class TestPromisePipeline {
+
+    private static final PromisePipeline PIPELINE = PromisePipeline
+            .of((action, data) -> action.resolve((Integer) data + 1))
+            .then((action, data) -> action.resolve((Integer) data * 2));
+
+    /**
+     * Make sure that the pipeline is run many times at the same time
+     */
+    @Test
+    public void test_run_concurrently() throws Exception {
+
+        final List<CompletableFuture<Object>> futures = new ArrayList<CompletableFuture<Object>>();
+        for (int i = 0; i < 1000; i++) {
+            futures.add(PIPELINE.run(i));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals((i + 1) * 2, futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * Make sure that "then" returns a new pipeline and leaves the original one as it is
+     */
+    @Test
+    public void test_immutable() throws Exception {
+
+        final PromisePipeline longer = PIPELINE.then((action, data) -> action.resolve("result=" + data));
+
+        assertEquals(4, PIPELINE.run(1).get(5, TimeUnit.SECONDS));
+        assertEquals("result=4", longer.run(1).get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Make sure that the rejection skips the steps without the rejection handler and can be recovered
+     */
+    @Test
+    public void test_rejection() throws Exception {
+
+        final AtomicBoolean skipped = new AtomicBoolean(true);
+        final PromisePipeline pipeline = PromisePipeline
+                .of((action, data) -> action.reject("my reason"))
+                .then((action, data) -> {
+                    skipped.set(false);
+                    action.resolve();
+                })
+                .then(null, (action, data) -> action.resolve("recovered from " + data));
+
+        assertEquals("recovered from my reason", pipeline.run(null).get(5, TimeUnit.SECONDS));
+        assertTrue(skipped.get());
+
+        final IllegalStateException exception = new IllegalStateException("thrown");
+        try {
+            PromisePipeline.of((action, data) -> {
+                throw exception;
+            }).run(null).get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertSame(exception, e.getCause());
+        }
+
+        try {
+            PromisePipeline.of((action, data) -> action.reject("my reason")).run(null).get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals("my reason", ((PromiseException) e.getCause()).getValue());
+        }
+    }
+
+    /**
+     * Make sure that the run continues on the thread resolving the step later, and only the first settle wins
+     */
+    @Test
+    public void test_resolved_later_on_another_thread() throws Exception {
+
+        final PromisePipeline pipeline = PromisePipeline
+                .of((action, data) -> {
+                    new Thread(() -> {
+                        Promise.sleep(100);
+                        action.resolve(data + "-async");
+                        action.reject("ignored");
+                    }, "resolver").start();
+                })
+                .then((action, data) -> action.resolve(data + "-" + Thread.currentThread().getName()));
+
+        assertEquals("start-async-resolver", pipeline.run("start").get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Make sure that cancelling the future stops the run before the next step
+     */
+    @Test
+    public void test_cancel() throws Exception {
+
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean nextStepRun = new AtomicBoolean(false);
+
+        final PromisePipeline pipeline = PromisePipeline
+                .of((action, data) -> {
+                    running.countDown();
+                    release.await();
+                    action.resolve();
+                })
+                .then((action, data) -> {
+                    nextStepRun.set(true);
+                    action.resolve();
+                });
+
+        final CompletableFuture<Object> future = pipeline.run(null);
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        future.cancel(true);
+        release.countDown();
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (CancellationException e) {
+        }
+        Promise.sleep(100);
+        assertFalse(nextStepRun.get());
+    }
+
+    /**
+     * Make sure that resolve called late on the action of a finished step does not settle the next step
+     */
+    @Test
+    public void test_late_settle_from_earlier_step() throws Exception {
+
+        final PromisePipeline pipeline = PromisePipeline
+                .of((action, data) -> {
+                    action.resolve("step1");
+                    new Thread(() -> {
+                        Promise.sleep(50);
+                        action.resolve("STALE-from-step1");
+                    }).start();
+                })
+                .then((action, data) -> {
+                    new Thread(() -> {
+                        Promise.sleep(200);
+                        action.resolve(data + "->step2");
+                    }).start();
+                });
+
+        assertEquals("step1->step2", pipeline.run(null).get(5, TimeUnit.SECONDS));
+    }
+}
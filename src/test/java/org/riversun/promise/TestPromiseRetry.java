@@ -0,0 +1,181 @@
+package org.riversun.promise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests for Promise.retry
+ * 
+ * Tom Misawa (riversun.org@gmail.com)
+ */
+public class TestPromiseRetry {
+
+    private static PromiseRetryException getRetryException(CompletableFuture<Object> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+            return null;
+        } catch (ExecutionException e) {
+            return (PromiseRetryException) e.getCause();
+        }
+    }
+
+    /**
+     * Make sure that the func is retried until fulfilled
+     */
+    @Test
+    public void test_retry_until_fulfilled() throws Exception {
+
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final CompletableFuture<Object> future = Promise.retry((action, data) -> {
+            if (attempts.incrementAndGet() < 3) {
+                action.reject("fail-" + attempts.get());
+            } else {
+                action.resolve("ok");
+            }
+        }, new RetryPolicy().maxAttempts(5).fixedDelay(20).jitter(0)).toCompletableFuture();
+
+        assertEquals("ok", future.get(5, TimeUnit.SECONDS));
+        assertEquals(3, attempts.get());
+    }
+
+    /**
+     * Make sure that the rejection carries the reasons of all the attempts
+     */
+    @Test
+    public void test_max_attempts() throws Exception {
+
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final PromiseRetryException e = getRetryException(Promise.retry((action, data) -> {
+            action.reject("fail-" + attempts.incrementAndGet());
+        }, new RetryPolicy().maxAttempts(3).backoff(10, 2.0, 100)).toCompletableFuture());
+
+        assertEquals(3, e.getAttempts());
+        assertEquals(Arrays.asList("fail-1", "fail-2", "fail-3"), e.getReasons());
+        assertEquals(3, attempts.get());
+    }
+
+    /**
+     * Make sure that a non-retryable reason is not retried
+     */
+    @Test
+    public void test_retry_if() throws Exception {
+
+        final AtomicInteger attempts = new AtomicInteger();
+        final IllegalStateException exception = new IllegalStateException("not retryable");
+
+        final PromiseRetryException e = getRetryException(Promise.retry((action, data) -> {
+            if (attempts.incrementAndGet() == 1) {
+                action.reject(new IOException("retryable"));
+            } else {
+                action.reject(exception);
+            }
+        }, new RetryPolicy().maxAttempts(5).fixedDelay(10).retryIf(reason -> reason instanceof IOException))
+                .toCompletableFuture());
+
+        assertEquals(2, e.getAttempts());
+        assertSame(exception, e.getCause());
+    }
+
+    /**
+     * Make sure that the retry gives up when the next attempt would exceed the duration
+     */
+    @Test
+    public void test_max_duration() throws Exception {
+
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final PromiseRetryException e = getRetryException(Promise.retry((action, data) -> {
+            attempts.incrementAndGet();
+            action.reject("fail");
+        }, new RetryPolicy().maxAttempts(10).fixedDelay(200).jitter(0).maxDurationMillis(100)).toCompletableFuture());
+
+        assertEquals(1, e.getAttempts());
+        assertTrue(e.getMessage().contains("ran out of time"));
+    }
+
+    /**
+     * Make sure that no thread is held during the backoff
+     */
+    @Test
+    public void test_backoff_does_not_hold_thread() throws Exception {
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final PromiseScheduler scheduler = PromiseScheduler.of(executor);
+            final AtomicInteger attempts = new AtomicInteger();
+            final CountDownLatch rejected = new CountDownLatch(1);
+
+            final CompletableFuture<Object> future = Promise.retry(scheduler, (action, data) -> {
+                if (attempts.incrementAndGet() == 1) {
+                    action.reject("fail");
+                    rejected.countDown();
+                } else {
+                    action.resolve("ok");
+                }
+            }, new RetryPolicy().fixedDelay(500).jitter(0)).toCompletableFuture();
+
+            assertTrue(rejected.await(5, TimeUnit.SECONDS));
+
+            // The only thread of the scheduler is free while waiting for the retry
+            final CompletableFuture<Object> other = Promise.resolveOn("other", scheduler)
+                    .then((action, data) -> action.resolve(data))
+                    .toCompletableFuture();
+
+            assertEquals("other", other.get(300, TimeUnit.MILLISECONDS));
+            assertEquals(1, attempts.get());
+            assertEquals("ok", future.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Make sure that cancelling the chain stops the retry
+     */
+    @Test
+    public void test_cancel_during_backoff() throws Exception {
+
+        final CancellationToken token = new CancellationToken();
+        final AtomicInteger attempts = new AtomicInteger();
+        final CountDownLatch rejected = new CountDownLatch(1);
+
+        final CompletableFuture<Object> future = Promise.retry((action, data) -> {
+            attempts.incrementAndGet();
+            action.reject("fail");
+            rejected.countDown();
+        }, new RetryPolicy().maxAttempts(5).fixedDelay(300).jitter(0))
+                .withCancellationToken(token)
+                .toCompletableFuture();
+
+        assertTrue(rejected.await(5, TimeUnit.SECONDS));
+        token.cancel();
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (CancellationException e) {
+            // The future of a cancelled chain is cancelled
+        }
+
+        Thread.sleep(500);
+        assertEquals(1, attempts.get());
+    }
+}
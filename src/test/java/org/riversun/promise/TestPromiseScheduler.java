@@ -0,0 +1,328 @@
+package org.riversun.promise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Tests for PromiseScheduler<br>
+ * 
+ * Tom Misawa (riversun.org@gmail.com)
+ */
+public class TestPromiseScheduler {
+
+    /**
+     * Make sure that worker threads are reused by many chains
+     */
+    @Test
+    public void test_default_scheduler_reuses_threads() throws InterruptedException {
+
+        final int maxThreads = 4;
+        final DefaultPromiseScheduler scheduler = new DefaultPromiseScheduler(maxThreads, 60000, "test-worker", true);
+
+        final int numOfChains = 200;
+        final CountDownLatch latch = new CountDownLatch(numOfChains);
+        final StringBuffer threadNames = new StringBuffer();
+
+        for (int i = 0; i < numOfChains; i++) {
+            Promise.resolveOn("start", scheduler)
+                    .then((action, data) -> {
+                        final Thread thread = Thread.currentThread();
+                        if (!thread.getName().startsWith("test-worker-") || !thread.isDaemon()) {
+                            threadNames.append(thread.getName());
+                        }
+                        action.resolve();
+                    })
+                    .then((action, data) -> {
+                        action.resolve();
+                        latch.countDown();
+                    })
+                    .start();
+        }
+        latch.await();
+
+        assertEquals("", threadNames.toString());
+        assertTrue(scheduler.getPoolSize() <= maxThreads);
+    }
+
+    /**
+     * Make sure that the scheduler which is not shared is shut down at the end of the chain
+     */
+    @Test
+    public void test_not_shared_scheduler_is_shutdown() throws InterruptedException {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final DefaultPromiseScheduler delegate = new DefaultPromiseScheduler(1, 60000, "test-worker", true);
+
+        final PromiseScheduler scheduler = new PromiseScheduler() {
+
+            @Override
+            public void execute(Runnable task) {
+                delegate.execute(task);
+            }
+
+            @Override
+            public boolean isShared() {
+                return false;
+            }
+
+            @Override
+            public void shutdown() {
+                latch.countDown();
+            }
+        };
+
+        Promise.resolveOn("start", scheduler)
+                .then((action, data) -> {
+                    action.resolve();
+                })
+                .start();
+
+        latch.await();
+    }
+
+    /**
+     * Make sure that funcs run on virtual threads with the virtual scheduler(Java 21 or later)
+     */
+    @Test
+    public void test_virtual_scheduler() throws Exception {
+
+        final PromiseScheduler scheduler;
+        try {
+            scheduler = PromiseScheduler.virtual();
+        } catch (UnsupportedOperationException e) {
+            Assume.assumeNoException(e);
+            return;
+        }
+
+        final Method isVirtual = Thread.class.getMethod("isVirtual");
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<Object> results = new ArrayList<Object>();
+
+        Promise.allOn(scheduler,
+                (Func) (action, data) -> action.resolve(isVirtual.invoke(Thread.currentThread())),
+                (Func) (action, data) -> action.resolve(isVirtual.invoke(Thread.currentThread())))
+                .then((action, data) -> {
+                    results.addAll((List<?>) data);
+                    action.resolve();
+                    latch.countDown();
+                })
+                .start();
+        latch.await();
+
+        assertEquals(Arrays.asList(true, true), results);
+
+        final SyncPromise syncResult = SyncPromise.allOn(scheduler,
+                (Func) (action, data) -> action.resolve(isVirtual.invoke(Thread.currentThread())));
+        assertEquals(Arrays.asList(true), syncResult.getValue());
+    }
+
+    /**
+     * Make sure that SyncPromise.all nested in the elements of SyncPromise.all finishes
+     * even if all the threads of the scheduler are taken by the outer elements
+     */
+    @Test
+    public void test_sync_promise_all_nested_on_saturated_scheduler() throws Exception {
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final PromiseScheduler scheduler = PromiseScheduler.of(executor);
+
+        final Func inner = (action, data) -> {
+            final SyncPromise result = SyncPromise.allOn(scheduler,
+                    (Func) (innerAction, innerData) -> innerAction.resolve(1),
+                    (Func) (innerAction, innerData) -> innerAction.resolve(2),
+                    (Func) (innerAction, innerData) -> innerAction.resolve(3));
+            action.resolve(result.getValue());
+        };
+
+        final Future<SyncPromise> future = Executors.newSingleThreadExecutor().submit(
+                () -> SyncPromise.allOn(scheduler, inner, inner, inner, inner));
+        try {
+            final SyncPromise result = future.get(5, TimeUnit.SECONDS);
+            final List<Object> expected = Arrays.asList(1, 2, 3);
+            assertEquals(Arrays.asList(expected, expected, expected, expected), result.getValue());
+        } finally {
+            future.cancel(true);
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Make sure that null for the executor is not ambiguous and runs the chain on the default scheduler
+     */
+    @Test
+    public void test_null_executor_uses_default_scheduler() throws InterruptedException {
+        final List<Object> results = Collections.synchronizedList(new ArrayList<Object>());
+        final CountDownLatch latch = new CountDownLatch(2);
+        final Func[] funcs = { (action, data) -> action.resolve("func") };
+
+        Promise.resolve("data", null)
+                .then((action, data) -> {
+                    results.add(data);
+                    action.resolve();
+                    latch.countDown();
+                })
+                .start();
+
+        Promise.all(null, funcs)
+                .then((action, data) -> {
+                    results.add(data);
+                    action.resolve();
+                    latch.countDown();
+                })
+                .start();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(results.contains("data"));
+        assertTrue(results.contains(Arrays.asList("func")));
+    }
+
+    /**
+     * Make sure that the scheduler of a subclass overriding createExecutor runs on that executor
+     * and shuts it down like a chain does when finished
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void test_overridden_create_executor_is_used() throws InterruptedException {
+        final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "subclass-executor"));
+        final List<Object> results = new ArrayList<Object>();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        final Promise promise = new Promise() {
+            @Override
+            public ExecutorService createExecutor() {
+                return executor;
+            }
+        };
+
+        final PromiseScheduler scheduler = promise.createScheduler();
+        scheduler.execute(() -> {
+            results.add(Thread.currentThread().getName());
+            latch.countDown();
+        });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertFalse(scheduler.isShared());
+        scheduler.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("subclass-executor"), results);
+
+        assertSame(PromiseScheduler.getDefault(), new Promise().createScheduler());
+    }
+
+    /**
+     * Make sure that the inline chain runs on the thread calling start()
+     */
+    @Test
+    public void test_inline_runs_on_calling_thread() {
+        final List<Object> results = new ArrayList<Object>();
+        final Thread caller = Thread.currentThread();
+
+        Promise.resolve("start")
+                .inline()
+                .then((action, data) -> {
+                    results.add(Thread.currentThread() == caller);
+                    action.resolve(data + "-1");
+                })
+                .then((action, data) -> {
+                    results.add(data);
+                    action.resolve();
+                })
+                .start();
+
+        // Already finished when start() returns
+        assertEquals(Arrays.asList(true, "start-1"), results);
+    }
+
+    /**
+     * Make sure that the step queued before an Error thrown by the func goes on with its own chain,
+     * and does not run in the chain started later on the same thread
+     */
+    @Test
+    public void test_error_thrown_by_func_hands_over_queued_step() throws InterruptedException {
+        final List<Object> results = new ArrayList<Object>();
+        final Thread caller = Thread.currentThread();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Thread[] step2Thread = new Thread[1];
+
+        try {
+            Promise.resolve()
+                    .inline()
+                    .then((action, data) -> {
+                        action.resolve();
+                        throw new AssertionError("thrown after resolve");
+                    })
+                    .then((action, data) -> {
+                        step2Thread[0] = Thread.currentThread();
+                        action.resolve();
+                        latch.countDown();
+                    })
+                    .start();
+        } catch (AssertionError e) {
+            results.add("caught");
+        }
+
+        Promise.resolve()
+                .inline()
+                .then((action, data) -> {
+                    results.add("chain2");
+                    action.resolve();
+                })
+                .start();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(step2Thread[0] != caller);
+        assertEquals(Arrays.asList("caught", "chain2"), results);
+    }
+
+    /**
+     * Make sure that the inline chains started by the funcs of the inline chains run nested,
+     * and fall back to the scheduler beyond the depth limit
+     */
+    @Test
+    public void test_inline_depth_limit() throws InterruptedException {
+        final int levels = Promise.INLINE_MAX_DEPTH * 3;
+        final CountDownLatch latch = new CountDownLatch(levels);
+        final Thread caller = Thread.currentThread();
+        final AtomicInteger levelsOnCaller = new AtomicInteger();
+
+        startNested(0, levels, caller, levelsOnCaller, latch);
+
+        // The levels within the limit have finished when start() returns
+        assertEquals(Promise.INLINE_MAX_DEPTH + 1, levelsOnCaller.get());
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    private static void startNested(final int level, final int levels, final Thread caller, final AtomicInteger levelsOnCaller,
+            final CountDownLatch latch) {
+        Promise.resolve(level)
+                .inline()
+                .then((action, data) -> {
+                    if (Thread.currentThread() == caller) {
+                        levelsOnCaller.incrementAndGet();
+                    }
+                    if (level + 1 < levels) {
+                        startNested(level + 1, levels, caller, levelsOnCaller, latch);
+                    }
+                    action.resolve();
+                    latch.countDown();
+                })
+                .start();
+    }
+}
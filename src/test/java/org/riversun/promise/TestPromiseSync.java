@@ -1,5 +1,14 @@
 package org.riversun.promise;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
 /**
  * Tests for SyncPromise<br>
  * 
@@ -30,4 +39,85 @@ public class TestPromiseSync extends TestPromiseTestCase {
     public void await() {
     }
 
-}
\ No newline at end of file
+    /**
+     * Make sure that a step resolved inline continues on the calling thread without waiting
+     */
+    @Test
+    public void test_resolved_inline() {
+
+        final Thread caller = Thread.currentThread();
+        final List<Object> threads = new ArrayList<Object>();
+
+        final SyncPromise promise = SyncPromise.resolve(1)
+                .then((action, data) -> {
+                    threads.add(Thread.currentThread());
+                    action.resolve((Integer) data + 1);
+                })
+                .then((action, data) -> {
+                    threads.add(Thread.currentThread());
+                    action.resolve((Integer) data + 1);
+                });
+
+        assertEquals(3, promise.getValue());
+        assertEquals(Arrays.asList(caller, caller), threads);
+    }
+
+    /**
+     * Make sure that the calling thread waits for the step resolved on another thread after spinning
+     */
+    @Test
+    public void test_resolved_later_on_another_thread() {
+
+        final SyncPromise promise = SyncPromise.resolve(1)
+                .then((action, data) -> {
+                    new Thread(() -> {
+                        sleep(100);
+                        action.resolve((Integer) data + 1);
+                    }).start();
+                });
+
+        assertEquals(Status.FULFILLED, promise.getStatus());
+        assertEquals(2, promise.getValue());
+    }
+
+    /**
+     * Make sure that the interruption of the waiting thread rejects the step
+     */
+    @Test
+    public void test_interrupted_while_waiting() {
+
+        final Thread caller = Thread.currentThread();
+
+        final SyncPromise promise = SyncPromise.resolve()
+                .then((action, data) -> {
+                    new Thread(() -> {
+                        sleep(100);
+                        caller.interrupt();
+                    }).start();
+                    // Never resolved
+                });
+
+        assertEquals(Status.REJECTED, promise.getStatus());
+        assertFalse(Thread.interrupted());
+    }
+
+    /**
+     * Make sure that "then" on a promise not started yet runs neither handler
+     */
+    @Test
+    public void test_then_on_pending_promise() {
+
+        final List<Object> results = new ArrayList<Object>();
+
+        new SyncPromise((action, data) -> action.resolve("never run"))
+                .then((action, data) -> {
+                    results.add("fulfilled");
+                    action.resolve();
+                }, (action, data) -> {
+                    results.add("rejected");
+                    action.resolve();
+                });
+
+        assertEquals(Arrays.asList(), results);
+    }
+}
@@ -502,4 +502,97 @@ public abstract class TestPromiseTestCase {
         }
 
     }
-}
\ No newline at end of file
+
+    /**
+     * Make sure that a long chain resolved synchronously does not overflow the stack
+     */
+    @Test
+    public void test_long_sync_chain() {
+
+        final int numOfSteps = 3000;
+        final int[] counter = new int[1];
+        sync();
+
+        Thennable promise = PromiseResolve(0);
+        for (int i = 0; i < numOfSteps; i++) {
+            promise = promise.then((action, data) -> {
+                counter[0]++;
+                action.resolve((Integer) data + 1);
+            });
+        }
+        final StringBuilder sb = new StringBuilder();
+        promise.always((action, data) -> {
+            sb.append(data);
+            action.resolve();
+            consume();
+        }).start();
+        await();
+        assertEquals(numOfSteps, counter[0]);
+        assertEquals(String.valueOf(numOfSteps), sb.toString());
+    }
+
+    /**
+     * Make sure that only the first of resolve and reject settles the step
+     */
+    @Test
+    public void test_settle_only_once() {
+
+        final StringBuilder sb = new StringBuilder();
+        sync();
+
+        PromiseResolve()
+                .then((action, data) -> {
+                    action.resolve("1");
+                    action.resolve("2");
+                    action.reject("3");
+                })
+                .then((action, data) -> {
+                    sb.append("fulfilled:" + data + ",");
+                    action.resolve();
+                    consume();
+                }, (action, data) -> {
+                    sb.append("rejected:" + data + ",");
+                    action.resolve();
+                    consume();
+                })
+                .start();
+        await();
+        sleep(100);
+
+        assertEquals("fulfilled:1,", sb.toString());
+    }
+
+    /**
+     * Make sure that a rejection passes through the steps without rejection handler and the fulfillment passes through the rejection handlers
+     */
+    @Test
+    public void test_pass_through_long_chain() {
+
+        final StringBuilder sb = new StringBuilder();
+        sync();
+
+        Thennable promise = PromiseResolve("value")
+                .then(null, (action, data) -> {
+                    sb.append("not called,");
+                    action.resolve();
+                })
+                .then((action, data) -> {
+                    sb.append(data + ",");
+                    action.reject("reason");
+                });
+        for (int i = 0; i < 50; i++) {
+            promise = promise.then((action, data) -> {
+                sb.append("not called,");
+                action.resolve();
+            });
+        }
+        promise.then(null, (action, data) -> {
+            sb.append("rejected:" + data);
+            action.resolve();
+            consume();
+        }).start();
+        await();
+
+        assertEquals("value,rejected:reason", sb.toString());
+    }
+}
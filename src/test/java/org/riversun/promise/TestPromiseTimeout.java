@@ -0,0 +1,254 @@
+package org.riversun.promise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+/**
+ * Tests for timeouts and PromiseTimer<br>
+ * 
+ * Tom Misawa (riversun.org@gmail.com)
+ */
+public class TestPromiseTimeout {
+
+    /**
+     * Make sure that the step that never resolves is rejected on timeout
+     */
+    @Test
+    public void test_step_timeout() throws InterruptedException {
+
+        final List<Object> results = new ArrayList<Object>();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        Promise.resolve()
+                .then((action, data) -> {
+                    // Never resolved
+                }, 100)
+                .then(null, (action, data) -> {
+                    results.add(data.getClass());
+                    action.resolve();
+                    latch.countDown();
+                })
+                .start();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(TimeoutException.class), results);
+    }
+
+    /**
+     * Make sure that the timeout is disarmed when the step resolves in time
+     */
+    @Test
+    public void test_step_resolved_in_time() throws InterruptedException {
+
+        final List<Object> results = Collections.synchronizedList(new ArrayList<Object>());
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        Promise.resolve()
+                .then((action, data) -> {
+                    action.resolve("in time");
+                }, 200)
+                .then((action, data) -> {
+                    results.add(data);
+                    action.resolve();
+                    latch.countDown();
+                }, (action, data) -> {
+                    results.add(data);
+                    action.resolve();
+                })
+                .start();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Thread.sleep(400);
+        assertEquals(Arrays.asList("in time"), results);
+    }
+
+    /**
+     * Make sure that the chain is rejected when it does not finish in time
+     */
+    @Test
+    public void test_chain_timeout() throws InterruptedException {
+
+        final List<Object> results = Collections.synchronizedList(new ArrayList<Object>());
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        Promise.resolve()
+                .timeout(200)
+                .then((action, data) -> {
+                    results.add("step1");
+                    action.resolve();
+                })
+                .then((action, data) -> {
+                    // Never resolved
+                })
+                .then((action, data) -> {
+                    results.add("skipped step is run");
+                    action.resolve();
+                })
+                .then(null, (action, data) -> {
+                    results.add(data.getClass());
+                    action.resolve();
+                    latch.countDown();
+                })
+                .start();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("step1", TimeoutException.class), results);
+    }
+
+    /**
+     * Make sure that SyncPromise returns from the step that never resolves on timeout
+     */
+    @Test
+    public void test_sync_promise_step_timeout() {
+
+        final List<Object> results = new ArrayList<Object>();
+
+        SyncPromise.resolve()
+                .then((action, data) -> {
+                    // Never resolved
+                }, 100)
+                .then((action, data) -> {
+                    results.add("skipped step is run");
+                    action.resolve();
+                })
+                .then(null, (action, data) -> {
+                    results.add(data.getClass());
+                    action.resolve();
+                });
+
+        assertEquals(Arrays.asList(TimeoutException.class), results);
+    }
+
+    /**
+     * Make sure that SyncPromise chain is rejected when it does not finish in time
+     */
+    @Test
+    public void test_sync_promise_chain_timeout() {
+
+        final List<Object> results = new ArrayList<Object>();
+
+        SyncPromise.resolve()
+                .timeout(100)
+                .then((action, data) -> {
+                    results.add("step1");
+                    action.resolve();
+                })
+                .then((action, data) -> {
+                    // Never resolved
+                })
+                .then(null, (action, data) -> {
+                    results.add(data.getClass());
+                    action.resolve();
+                });
+
+        assertEquals(Arrays.asList("step1", TimeoutException.class), results);
+    }
+
+    /**
+     * Make sure that SyncPromise chain timeout works after the token is cleared
+     */
+    @Test
+    public void test_sync_promise_chain_timeout_without_token() {
+
+        final List<Object> results = new ArrayList<Object>();
+
+        SyncPromise.resolve()
+                .timeout(100)
+                .withCancellationToken(null)
+                .then((action, data) -> {
+                    // Never resolved
+                })
+                .then(null, (action, data) -> {
+                    results.add(data.getClass());
+                    action.resolve();
+                });
+
+        assertEquals(Arrays.asList(TimeoutException.class), results);
+    }
+
+    /**
+     * Make sure that SyncPromise chain finished in time leaves the token as it is
+     */
+    @Test
+    public void test_sync_promise_chain_timeout_not_fired_after_finish() throws InterruptedException {
+
+        final CancellationToken cancellationToken = new CancellationToken();
+
+        SyncPromise.resolve()
+                .withCancellationToken(cancellationToken)
+                .timeout(100)
+                .then((action, data) -> {
+                    new Thread(() -> action.resolve("step1")).start();
+                })
+                .then((action, data) -> {
+                    action.resolve();
+                });
+
+        Thread.sleep(300);
+        assertFalse(cancellationToken.isCancelled());
+    }
+
+    /**
+     * Make sure that many timeouts are armed and cancelled without running the tasks
+     */
+    @Test
+    public void test_timer_cancel_many() throws InterruptedException {
+
+        final PromiseTimer timer = new PromiseTimer(10, 512, "test-timer");
+        final int numOfTimeouts = 200000;
+        final List<PromiseTimer.Timeout> timeouts = new ArrayList<PromiseTimer.Timeout>(numOfTimeouts);
+        final List<Object> expired = Collections.synchronizedList(new ArrayList<Object>());
+
+        for (int i = 0; i < numOfTimeouts; i++) {
+            timeouts.add(timer.schedule(() -> expired.add("expired"), 10000 + i % 10000));
+        }
+        assertEquals(numOfTimeouts, timer.getPendingCount());
+
+        for (PromiseTimer.Timeout timeout : timeouts) {
+            assertTrue(timeout.cancel());
+        }
+        assertEquals(0, timer.getPendingCount());
+
+        Thread.sleep(300);
+        assertEquals(0, expired.size());
+    }
+
+    /**
+     * Make sure that the tasks expire in the order of the deadline, including the ones beyond a round of the wheel
+     */
+    @Test
+    public void test_timer_expire_in_order() throws InterruptedException {
+
+        final PromiseTimer timer = new PromiseTimer(5, 8, "test-timer");
+        final List<Object> expired = Collections.synchronizedList(new ArrayList<Object>());
+        final CountDownLatch latch = new CountDownLatch(3);
+
+        timer.schedule(() -> {
+            expired.add("3");
+            latch.countDown();
+        }, 300);
+        timer.schedule(() -> {
+            expired.add("1");
+            latch.countDown();
+        }, 20);
+        timer.schedule(() -> {
+            expired.add("2");
+            latch.countDown();
+        }, 100);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("1", "2", "3"), expired);
+        assertEquals(0, timer.getPendingCount());
+    }
+}
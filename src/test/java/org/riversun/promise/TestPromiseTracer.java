@@ -0,0 +1,95 @@
+package org.riversun.promise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for PromiseTracer<br>
+ * 
+ * Tom Misawa (riversun.org@gmail.com)
+ */
+public class TestPromiseTracer {
+
+    @After
+    public void tearDown() {
+        PromiseTracer.uninstall();
+    }
+
+    /**
+     * Make sure that the installed tracer receives the events of the chain
+     */
+    @Test
+    public void test_tracer_receives_events() throws InterruptedException {
+
+        final List<PromiseTracer.Phase> phases = Collections.synchronizedList(new ArrayList<PromiseTracer.Phase>());
+        final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+
+        PromiseTracer.install((promiseId, promiseName, phase, thread, detail) -> {
+            if (promiseId <= 0 || thread == null) {
+                errors.add(phase + " has no id or thread");
+            }
+            phases.add(phase);
+        });
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        Promise.resolve("start")
+                .then((action, data) -> {
+                    action.reject("ERROR");
+                })
+                .then(null, (action, data) -> {
+                    action.resolve();
+                    latch.countDown();
+                })
+                .start();
+        latch.await();
+
+        assertTrue(errors.isEmpty());
+        assertTrue(phases.contains(PromiseTracer.Phase.START));
+        assertTrue(phases.contains(PromiseTracer.Phase.IGNITE));
+        assertTrue(phases.contains(PromiseTracer.Phase.RUN));
+        assertTrue(phases.contains(PromiseTracer.Phase.REJECT));
+    }
+
+    /**
+     * Make sure that nothing is traced after uninstalling
+     */
+    @Test
+    public void test_tracer_uninstall() throws InterruptedException {
+
+        final List<PromiseTracer.Phase> phases = Collections.synchronizedList(new ArrayList<PromiseTracer.Phase>());
+        PromiseTracer.install((promiseId, promiseName, phase, thread, detail) -> phases.add(phase));
+        PromiseTracer.uninstall();
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        Promise.resolve()
+                .then((action, data) -> {
+                    action.resolve();
+                    latch.countDown();
+                })
+                .start();
+        latch.await();
+
+        assertEquals(0, phases.size());
+    }
+
+    /**
+     * Make sure that the name of the promise created by "then" is computed on first use
+     */
+    @Test
+    public void test_name_of_next_promise() {
+        final Promise promise = new Promise("founder", (action, data) -> action.resolve());
+        final Promise nextPromise = promise.then(new Promise("step", (action, data) -> action.resolve()));
+
+        assertEquals("NextPromise-of-founder)", nextPromise.getName());
+        assertEquals("NextPromise-of-NextPromise-of-founder))",
+                nextPromise.then(new Promise((action, data) -> action.resolve())).getName());
+    }
+}
@@ -0,0 +1,256 @@
+package org.riversun.promise;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Tests for TypedPromise, LongPromise, IntPromise and DoublePromise<br>
+ * 
+ * Tom Misawa (riversun.org@gmail.com)
+ */
+public class TestTypedPromise {
+
+    private static class ObjectHolder {
+        public Object data;
+    }
+
+    /**
+     * Test typed chain
+     */
+    @Test
+    public void test_typed_chain() throws InterruptedException {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final ObjectHolder holder = new ObjectHolder();
+
+        TypedPromise.resolve("foo")
+                .then((TypedAction<Integer> action, String data) -> {
+                    action.resolve(data.length());
+                })
+                .then((TypedAction<String> action, Integer data) -> {
+                    new Thread(() -> {
+                        action.resolve("length=" + data);
+                    }).start();
+                })
+                .then((TypedAction<Void> action, String data) -> {
+                    holder.data = data;
+                    action.resolve(null);
+                    latch.countDown();
+                })
+                .start();
+
+        latch.await();
+        assertEquals("length=3", holder.data);
+    }
+
+    /**
+     * Test rejection of typed chain, skipped funcs and recovery
+     */
+    @Test
+    public void test_typed_rejection_chain() throws InterruptedException {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final StringBuilder sb = new StringBuilder();
+
+        TypedPromise.resolve(1)
+                .then((TypedAction<Integer> action, Integer data) -> {
+                    throw new Exception("ERROR");
+                })
+                .then((TypedAction<Integer> action, Integer data) -> {
+                    sb.append("not reached");
+                    action.resolve(data);
+                })
+                .then((TypedAction<String> action, Integer data) -> {
+                    action.resolve("not reached");
+                }, (action, reason) -> {
+                    action.resolve(((Exception) reason).getMessage());
+                })
+                .then((TypedAction<Void> action, String data) -> {
+                    sb.append(data);
+                    action.resolve(null);
+                    latch.countDown();
+                })
+                .start();
+
+        latch.await();
+        assertEquals("ERROR", sb.toString());
+    }
+
+    /**
+     * Make sure only the first settlement is used
+     */
+    @Test
+    public void test_first_settlement_wins() throws InterruptedException {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final StringBuilder sb = new StringBuilder();
+
+        LongPromise.resolve(1)
+                .then((action, data) -> {
+                    action.resolve(data + 1);
+                    action.resolve(100);
+                    action.reject("ERROR");
+                })
+                .then((action, data) -> {
+                    sb.append(data);
+                    action.resolve(data);
+                    latch.countDown();
+                })
+                .start();
+
+        latch.await();
+        assertEquals("2", sb.toString());
+    }
+
+    /**
+     * Test long chain with primitive value
+     */
+    @Test
+    public void test_long_chain() throws InterruptedException {
+
+        final int numOfSteps = 10000;
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long[] result = new long[1];
+
+        LongPromise promise = LongPromise.resolve(0);
+        for (int i = 0; i < numOfSteps; i++) {
+            promise = promise.then((action, data) -> action.resolve(data + 1));
+        }
+        promise.then((action, data) -> {
+            result[0] = data;
+            action.resolve(data);
+            latch.countDown();
+        }).start();
+
+        latch.await();
+        assertEquals(numOfSteps, result[0]);
+    }
+
+    /**
+     * Test int and double chain
+     */
+    @Test
+    public void test_int_and_double_chain() throws InterruptedException {
+
+        final CountDownLatch latch = new CountDownLatch(2);
+        final int[] intResult = new int[1];
+        final double[] doubleResult = new double[1];
+
+        IntPromise.resolve(20)
+                .then((action, data) -> action.resolve(data * 2))
+                .then((action, data) -> {
+                    intResult[0] = data;
+                    action.resolve(data);
+                    latch.countDown();
+                })
+                .start();
+
+        DoublePromise.resolve(1.5)
+                .then((action, data) -> action.reject("ERROR"))
+                .then((action, data) -> action.resolve(data), (action, reason) -> action.resolve(-1.5))
+                .then((action, data) -> {
+                    doubleResult[0] = data;
+                    action.resolve(data);
+                    latch.countDown();
+                })
+                .start();
+
+        latch.await();
+        assertEquals(40, intResult[0]);
+        assertEquals(-1.5, doubleResult[0], 0);
+    }
+
+    /**
+     * Test Promise.allLong
+     */
+    @Test
+    public void test_promise_all_long() throws InterruptedException {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final ObjectHolder holder = new ObjectHolder();
+
+        Promise.allLong(
+                LongPromise.resolve(1).then((action, data) -> {
+                    new Thread(() -> {
+                        Promise.sleep(100);
+                        action.resolve(data * 10);
+                    }).start();
+                }),
+                LongPromise.resolve(2).then((action, data) -> action.resolve(data * 10)),
+                LongPromise.resolve(3))
+                .then((TypedAction<Void> action, long[] data) -> {
+                    holder.data = data;
+                    action.resolve(null);
+                    latch.countDown();
+                })
+                .start();
+
+        latch.await();
+        assertArrayEquals(new long[] { 10, 20, 3 }, (long[]) holder.data);
+    }
+
+    /**
+     * Test Promise.allLong with rejection
+     */
+    @Test
+    public void test_promise_all_long_with_rejection() throws InterruptedException {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final ObjectHolder holder = new ObjectHolder();
+
+        Promise.allLong(
+                LongPromise.resolve(1).then((action, data) -> {
+                    Promise.sleep(100);
+                    action.resolve(data);
+                }),
+                LongPromise.resolve(2).then((action, data) -> action.reject("ERROR")))
+                .then((TypedAction<Void> action, long[] data) -> {
+                    holder.data = data;
+                    action.resolve(null);
+                    latch.countDown();
+                }, (action, reason) -> {
+                    holder.data = reason;
+                    action.resolve(null);
+                    latch.countDown();
+                })
+                .start();
+
+        latch.await();
+        assertEquals("ERROR", holder.data);
+    }
+
+    /**
+     * Test Promise.allInt and Promise.allDouble
+     */
+    @Test
+    public void test_promise_all_int_double() throws InterruptedException {
+
+        final CountDownLatch latch = new CountDownLatch(2);
+        final ObjectHolder intHolder = new ObjectHolder();
+        final ObjectHolder doubleHolder = new ObjectHolder();
+
+        Promise.allInt(IntPromise.resolve(1), IntPromise.resolve(2).then((action, data) -> action.resolve(data + 1)))
+                .then((TypedAction<Void> action, int[] data) -> {
+                    intHolder.data = data;
+                    action.resolve(null);
+                    latch.countDown();
+                })
+                .start();
+
+        Promise.allDouble()
+                .then((TypedAction<Void> action, double[] data) -> {
+                    doubleHolder.data = data;
+                    action.resolve(null);
+                    latch.countDown();
+                })
+                .start();
+
+        latch.await();
+        assertArrayEquals(new int[] { 1, 3 }, (int[]) intHolder.data);
+        assertEquals(0, ((double[]) doubleHolder.data).length);
+    }
+}